@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import editortrees.Edit;
+import editortrees.EditTree;
+
+/**
+ * Compares EditTree.applyBatch() with applying the same edits one at a time
+ * through add(char, int) and delete(int), for batches of single-character
+ * edits like a collaborative backend sends. Each batch of inserts is followed
+ * by a batch deleting the same characters again, so the document keeps its
+ * size. Edits are either spread over the whole document or clustered a few
+ * characters apart. The one-at-a-time loop walks each batch from the end of
+ * the document back, so earlier edits don't shift the positions of later
+ * ones.
+ */
+public class BatchEditBenchmark {
+
+	private static final int SIZE = 1000000;
+	private static final int EDITS = 2000000;
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) {
+		StringBuilder text = new StringBuilder(SIZE);
+		Random random = new Random(42);
+		for (int i = 0; i < SIZE; i++) {
+			text.append((char) ('a' + random.nextInt(26)));
+		}
+		EditTree batched = new EditTree(text.toString());
+		EditTree looped = new EditTree(text.toString());
+		for (int round = 1; round <= ROUNDS; round++) {
+			System.out.println("round " + round);
+			run("spread, batches of 500", batched, looped, random, 500, SIZE / 500 - 1);
+			run("spread, batches of 5000", batched, looped, random, 5000, SIZE / 5000 - 1);
+			run("clustered, batches of 500", batched, looped, random, 500, 8);
+		}
+		if (!batched.toString().equals(looped.toString())) {
+			throw new IllegalStateException("trees differ");
+		}
+	}
+
+	/**
+	 * Inserts batchSize characters, each at a random spot in its own stretch
+	 * of stride characters, and then deletes them, in both trees.
+	 */
+	private static void run(String name, EditTree batched, EditTree looped, Random random, int batchSize,
+			int stride) {
+		long batchTime = 0;
+		long loopTime = 0;
+		int batches = EDITS / (2 * batchSize);
+		for (int b = 0; b < batches; b++) {
+			int base = random.nextInt(SIZE - batchSize * stride);
+			int[] positions = new int[batchSize];
+			List<Edit> inserts = new ArrayList<Edit>(batchSize);
+			List<Edit> deletes = new ArrayList<Edit>(batchSize);
+			for (int i = 0; i < batchSize; i++) {
+				positions[i] = base + i * stride + random.nextInt(stride);
+				inserts.add(Edit.insert(positions[i], "x"));
+				deletes.add(Edit.delete(positions[i] + i, 1));
+			}
+			long start = System.nanoTime();
+			batched.applyBatch(inserts);
+			batched.applyBatch(deletes);
+			batchTime += System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = batchSize - 1; i >= 0; i--) {
+				looped.add('x', positions[i]);
+			}
+			for (int i = batchSize - 1; i >= 0; i--) {
+				looped.delete(positions[i] + i);
+			}
+			loopTime += System.nanoTime() - start;
+		}
+		int edits = 2 * batches * batchSize;
+		System.out.printf("  %-26s applyBatch %7.1f ns/edit, one at a time %7.1f ns/edit%n", name,
+				(double) batchTime / edits, (double) loopTime / edits);
+	}
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import editortrees.EditTree;
+import editortrees.Node;
+
+/**
+ * Counts the bytes the current thread allocates per EditTree.add(char, int)
+ * and EditTree.delete(int), using the HotSpot per-thread allocation counter.
+ * An add should allocate only the new Node and a delete nothing at all. Run
+ * with escape analysis off (-XX:-DoEscapeAnalysis) to count allocations the
+ * JIT would otherwise hide.
+ */
+public class EditAllocationBenchmark {
+
+	private static final int SIZE = 1000000;
+	private static final int OPS = 1000000;
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		StringBuilder text = new StringBuilder(SIZE);
+		Random random = new Random(42);
+		for (int i = 0; i < SIZE; i++) {
+			text.append((char) ('a' + random.nextInt(26)));
+		}
+		EditTree tree = new EditTree(text.toString());
+		int[] positions = new int[OPS];
+		for (int round = 1; round <= ROUNDS; round++) {
+			for (int i = 0; i < OPS; i++) {
+				positions[i] = random.nextInt(SIZE);
+			}
+			long before = threads.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < OPS; i++) {
+				tree.add('x', positions[i]);
+			}
+			long afterAdds = threads.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < OPS; i++) {
+				tree.delete(positions[i]);
+			}
+			long afterDeletes = threads.getThreadAllocatedBytes(thread);
+			System.out.printf("round %d: add %6.1f bytes/op, delete %6.1f bytes/op%n", round,
+					(double) (afterAdds - before) / OPS, (double) (afterDeletes - afterAdds) / OPS);
+		}
+		long before = threads.getThreadAllocatedBytes(thread);
+		Node node = new Node('x');
+		long nodeBytes = threads.getThreadAllocatedBytes(thread) - before;
+		System.out.println("one new Node, for scale: " + nodeBytes + " bytes (" + node.slowSize() + ")");
+	}
+}
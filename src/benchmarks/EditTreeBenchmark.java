@@ -0,0 +1,123 @@
+package benchmarks;
+
+import java.util.Random;
+
+import editortrees.Cursor;
+import editortrees.EditTree;
+
+/**
+ * Times the EditTree hot paths (get, a sequential scan with a cursor, add at
+ * random spots and while typing, delete, toString and the copy constructor) on a 10 million character tree.
+ * Each phase is run a few times so the JIT has compiled it before the last,
+ * reported round. Needs a large heap, for example:
+ * java -Xmx4g benchmarks.EditTreeBenchmark
+ */
+public class EditTreeBenchmark {
+
+	private static final int SIZE = 10000000;
+	private static final int OPS = 1000000;
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : SIZE;
+		StringBuilder text = new StringBuilder(size);
+		Random random = new Random(42);
+		for (int i = 0; i < size; i++) {
+			text.append((char) ('a' + random.nextInt(26)));
+		}
+		EditTree tree = new EditTree(text.toString());
+		text = null;
+		System.out.println("characters: " + tree.size());
+		for (int round = 1; round <= ROUNDS; round++) {
+			System.out.println("round " + round);
+			random = new Random(round);
+			report("get", OPS, timeGets(tree, random));
+			report("scan", OPS, timeScan(tree, random));
+			report("add", OPS, timeAdds(tree, random));
+			report("type", OPS, timeTyping(tree, random));
+			report("delete", OPS, timeDeletes(tree, random));
+			report("toString", 1, timeToString(tree));
+			report("copy", 1, timeCopy(tree));
+		}
+	}
+
+	private static long timeGets(EditTree tree, Random random) {
+		long start = System.nanoTime();
+		int sum = 0;
+		for (int i = 0; i < OPS; i++) {
+			sum += tree.get(random.nextInt(tree.size()));
+		}
+		long time = System.nanoTime() - start;
+		if (sum == 42) {
+			System.out.println();
+		}
+		return time;
+	}
+
+	/**
+	 * Reads OPS consecutive characters with a cursor, the way a lexer or a
+	 * search does, instead of calling get(int) for each of them.
+	 */
+	private static long timeScan(EditTree tree, Random random) {
+		long start = System.nanoTime();
+		Cursor cursor = tree.cursor(random.nextInt(tree.size() - OPS));
+		int sum = 0;
+		for (int i = 0; i < OPS; i++) {
+			sum += cursor.next();
+		}
+		long time = System.nanoTime() - start;
+		if (sum == 42) {
+			System.out.println();
+		}
+		return time;
+	}
+
+	private static long timeAdds(EditTree tree, Random random) {
+		long start = System.nanoTime();
+		for (int i = 0; i < OPS; i++) {
+			tree.add('x', random.nextInt(tree.size() + 1));
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Adds at consecutive positions, the way typing does, so the path down is
+	 * mostly in cache and the cost of the descent itself shows.
+	 */
+	private static long timeTyping(EditTree tree, Random random) {
+		int pos = random.nextInt(tree.size() + 1);
+		long start = System.nanoTime();
+		for (int i = 0; i < OPS; i++) {
+			tree.add('x', pos++);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long timeDeletes(EditTree tree, Random random) {
+		long start = System.nanoTime();
+		for (int i = 0; i < OPS; i++) {
+			tree.delete(random.nextInt(tree.size()));
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long timeToString(EditTree tree) {
+		long start = System.nanoTime();
+		if (tree.toString().length() != tree.size()) {
+			throw new IllegalStateException();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long timeCopy(EditTree tree) {
+		long start = System.nanoTime();
+		if (new EditTree(tree).size() != tree.size()) {
+			throw new IllegalStateException();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static void report(String phase, int ops, long nanos) {
+		System.out.printf("  %-9s %8.1f ms  %8.1f ns/op%n", phase, nanos / 1e6, (double) nanos / ops);
+	}
+}
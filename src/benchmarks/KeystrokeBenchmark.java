@@ -0,0 +1,92 @@
+package benchmarks;
+
+import java.util.Random;
+
+import editortrees.EditTree;
+
+/**
+ * Replays a keystroke trace against a large EditTree. The trace is made up
+ * the way a person edits: runs of typed characters and backspaces at the
+ * caret, arrow keys that move it a few characters or a line, and now and then
+ * a jump somewhere else in the document. Every keystroke also reads the
+ * character before the caret, the way an editor checks for brackets to
+ * match. Run with, for example:
+ * java -Xmx2g benchmarks.KeystrokeBenchmark [size] [keystrokes]
+ */
+public class KeystrokeBenchmark {
+
+	private static final int SIZE = 1000000;
+	private static final int KEYSTROKES = 2000000;
+	private static final int ROUNDS = 3;
+
+	private static final byte TYPE = 0;
+	private static final byte BACKSPACE = 1;
+	private static final byte MOVE = 2;
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : SIZE;
+		int keystrokes = args.length > 1 ? Integer.parseInt(args[1]) : KEYSTROKES;
+		StringBuilder text = new StringBuilder(size);
+		Random random = new Random(42);
+		for (int i = 0; i < size; i++) {
+			text.append(random.nextInt(60) == 0 ? '\n' : (char) ('a' + random.nextInt(26)));
+		}
+		String initial = text.toString();
+		byte[] kinds = new byte[keystrokes];
+		int[] moves = new int[keystrokes];
+		makeTrace(random, kinds, moves);
+		for (int round = 1; round <= ROUNDS; round++) {
+			EditTree tree = new EditTree(initial);
+			long start = System.nanoTime();
+			int checksum = replay(tree, kinds, moves);
+			long nanos = System.nanoTime() - start;
+			System.out.printf("round %d  %8.1f ms  %6.1f ns/keystroke  (%d)%n", round, nanos / 1e6,
+					(double) nanos / keystrokes, checksum);
+		}
+	}
+
+	private static void makeTrace(Random random, byte[] kinds, int[] moves) {
+		for (int i = 0; i < kinds.length; i++) {
+			int r = random.nextInt(100);
+			if (r < 75) {
+				kinds[i] = TYPE;
+				moves[i] = 'a' + random.nextInt(26);
+			} else if (r < 90) {
+				kinds[i] = BACKSPACE;
+			} else if (r < 99) {
+				kinds[i] = MOVE;
+				moves[i] = random.nextBoolean() ? random.nextInt(9) - 4 : random.nextInt(161) - 80;
+			} else {
+				kinds[i] = MOVE;
+				moves[i] = Integer.MAX_VALUE - random.nextInt(1000000); // jump
+			}
+		}
+	}
+
+	private static int replay(EditTree tree, byte[] kinds, int[] moves) {
+		int caret = tree.size() / 2;
+		int checksum = 0;
+		for (int i = 0; i < kinds.length; i++) {
+			switch (kinds[i]) {
+			case TYPE:
+				tree.add((char) moves[i], caret++);
+				break;
+			case BACKSPACE:
+				if (caret > 0) {
+					tree.delete(--caret);
+				}
+				break;
+			default:
+				if (moves[i] > Integer.MAX_VALUE - 1000000) {
+					caret = (Integer.MAX_VALUE - moves[i]) % (tree.size() + 1);
+				} else {
+					caret = Math.max(0, Math.min(tree.size(), caret + moves[i]));
+				}
+			}
+			if (caret > 0) {
+				checksum += tree.get(caret - 1);
+			}
+		}
+		return checksum;
+	}
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import editortrees.EditTree;
+
+/**
+ * Compares searching an EditTree in place with indexOf() and findAll()
+ * against copying it with toString() and searching the String, the way
+ * find-next had to be done before. Run with, for example:
+ * java -Xmx4g benchmarks.SearchBenchmark [size]
+ */
+public class SearchBenchmark {
+
+	private static final int SIZE = 10000000;
+	private static final int ROUNDS = 3;
+	private static final String PATTERN = "needle";
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : SIZE;
+		StringBuilder text = new StringBuilder(size);
+		Random random = new Random(42);
+		for (int i = 0; i < size; i++) {
+			text.append(random.nextInt(8) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+		}
+		for (int i = 0; i < 100; i++) {
+			int pos = random.nextInt(size - PATTERN.length());
+			text.replace(pos, pos + PATTERN.length(), PATTERN);
+		}
+		EditTree tree = new EditTree(text.toString());
+		text = null;
+		for (int round = 1; round <= ROUNDS; round++) {
+			System.out.println("round " + round);
+			long start = System.nanoTime();
+			int count = 0;
+			for (int pos = tree.toString().indexOf(PATTERN); pos >= 0; pos = tree.toString().indexOf(PATTERN,
+					pos + 1)) {
+				count++;
+				if (count == 10) {
+					break;
+				}
+			}
+			report("toString+indexOf, 10 find-nexts", System.nanoTime() - start);
+			start = System.nanoTime();
+			count = 0;
+			for (int pos = tree.indexOf(PATTERN); pos >= 0; pos = tree.indexOf(PATTERN, pos + 1)) {
+				count++;
+				if (count == 10) {
+					break;
+				}
+			}
+			report("indexOf, 10 find-nexts", System.nanoTime() - start);
+			start = System.nanoTime();
+			count = 0;
+			PrimitiveIterator.OfInt matches = tree.findAll(PATTERN);
+			while (matches.hasNext()) {
+				matches.nextInt();
+				count++;
+			}
+			report("findAll, " + count + " matches", System.nanoTime() - start);
+			start = System.nanoTime();
+			int last = tree.lastIndexOf(PATTERN);
+			report("lastIndexOf (" + last + ")", System.nanoTime() - start);
+		}
+	}
+
+	private static void report(String phase, long nanos) {
+		System.out.printf("  %-34s %8.1f ms%n", phase, nanos / 1e6);
+	}
+}
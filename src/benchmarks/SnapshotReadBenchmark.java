@@ -0,0 +1,140 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import editortrees.ConcurrentEditTree;
+import editortrees.SnapshotEditTree;
+
+/**
+ * Measures how reader throughput scales with the number of reader threads
+ * while one writer types into the same document, comparing lock-free reads of
+ * published snapshots (SnapshotEditTree) with the optimistic, lock-based
+ * reads of ConcurrentEditTree. Each reader does random get(pos, 16) calls.
+ * Arguments are the reader counts to try, e.g. 1 2 4 8 16 32; the default
+ * goes up to twice the number of processors, and at least to 16.
+ */
+public class SnapshotReadBenchmark {
+
+	private static final int SIZE = 1000000;
+	private static final long MILLIS = 2000;
+
+	private interface Reader {
+		String get(int pos, int length);
+
+		int size();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int[] counts;
+		if (args.length > 0) {
+			counts = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				counts[i] = Integer.parseInt(args[i]);
+			}
+		} else {
+			int max = Math.max(16, 2 * Runtime.getRuntime().availableProcessors());
+			counts = new int[32 - Integer.numberOfLeadingZeros(max)];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = 1 << i;
+			}
+		}
+		StringBuilder text = new StringBuilder(SIZE);
+		Random random = new Random(42);
+		for (int i = 0; i < SIZE; i++) {
+			text.append((char) ('a' + random.nextInt(26)));
+		}
+		System.out.println("processors: " + Runtime.getRuntime().availableProcessors());
+		System.out.println("readers   snapshot reads/s   locked reads/s");
+		for (int readers : counts) {
+			final SnapshotEditTree snapshots = new SnapshotEditTree(text.toString());
+			final ConcurrentEditTree locked = new ConcurrentEditTree(text.toString());
+			double snapshotRate = run(readers, new Reader() {
+				public String get(int pos, int length) {
+					return snapshots.get(pos, length);
+				}
+
+				public int size() {
+					return snapshots.size();
+				}
+			}, new Runnable() {
+				public void run() {
+					snapshots.add('x', snapshots.size() / 2);
+				}
+			});
+			double lockedRate = run(readers, new Reader() {
+				public String get(int pos, int length) {
+					return locked.get(pos, length);
+				}
+
+				public int size() {
+					return locked.size();
+				}
+			}, new Runnable() {
+				public void run() {
+					locked.add('x', locked.size() / 2);
+				}
+			});
+			System.out.printf("%7d %18.0f %16.0f%n", readers, snapshotRate, lockedRate);
+		}
+	}
+
+	/**
+	 * Runs readers reader threads and one writer for MILLIS milliseconds.
+	 * 
+	 * @return reads per second, over all readers
+	 */
+	private static double run(int readers, final Reader reader, final Runnable edit) throws InterruptedException {
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicLong reads = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[readers + 1];
+		for (int i = 0; i < readers; i++) {
+			final int seed = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					long count = 0;
+					awaitQuietly(start);
+					while (!done.get()) {
+						int pos = random.nextInt(reader.size() - 16);
+						if (reader.get(pos, 16).length() == 16) {
+							count++;
+						}
+					}
+					reads.addAndGet(count);
+				}
+			};
+		}
+		threads[readers] = new Thread() {
+			@Override
+			public void run() {
+				awaitQuietly(start);
+				while (!done.get()) {
+					edit.run();
+				}
+			}
+		};
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		start.countDown();
+		Thread.sleep(MILLIS);
+		done.set(true);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return reads.get() * 1000.0 / MILLIS;
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,497 @@
+package editortrees;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import editortrees.Node.Code;
+
+/**
+ * Saves an EditTree to a file over and over, writing each time only the
+ * nodes whose subtrees changed since the last checkpoint. Every edit already
+ * marks the nodes on its path, and those its rotations moved, as unsaved, so a
+ * checkpoint after a few keystrokes writes O(log n) nodes instead of the
+ * whole document.
+ *
+ * The file is append-only, copy-on-write:
+ *
+ * <pre>
+ * magic      4 bytes  "EDCP"
+ * version    1 byte   VERSION
+ * padding    3 bytes
+ * slots      2 * SLOT bytes, each:
+ *   sequence 8 bytes  number of this checkpoint, counting from 1
+ *   root     8 bytes  offset of the root node, or -1 for an empty tree
+ *   end      8 bytes  length of the file this checkpoint uses
+ *   base     8 bytes  length of the file after its last compaction
+ *   size     4 bytes  number of characters
+ *   rotation 4 bytes  totalRotationCount()
+ *   crc      4 bytes  CRC32 of the slot before it
+ * nodes      from DATA on, each:
+ *   data     2 bytes  the character
+ *   rank     varint   rank * 16 + 8 if the left child is a reference + 4 if
+ *                     the right one is + the ordinal of the balance code
+ *   left     varint   offset of the left child, if it is a reference
+ *   right    varint   offset of the right child, if it is a reference
+ * </pre>
+ *
+ * Varints are as in TreeFormat. A child that is not a reference and not empty
+ * is written right after its parent, in pre-order, so a checkpoint is one
+ * sequential write of the changed nodes, each pointing back at the unchanged
+ * subtrees beside it. Once those are forced to disk the checkpoint is
+ * committed by writing the slot its sequence number picks, so a crash at any
+ * point leaves the other slot, and the checkpoint before, intact.
+ *
+ * Old versions of nodes stay in the file until it has grown by as much as it
+ * was after its last compaction; the next checkpoint then writes the whole
+ * tree to a new file and renames it over this one, which keeps the file at
+ * most about twice the size of a full save at O(1) amortized cost per byte
+ * written.
+ *
+ * Each node remembers where it was written, tagged with a generation that is
+ * new for every CheckpointFile opened or created and every compaction. A
+ * subtree that was split off and concatenated back, or that comes from a tree
+ * saved in another file, or that was saved before the last compaction, has a
+ * tag from some other generation and is written again.
+ */
+public class CheckpointFile implements Closeable {
+
+	static final int MAGIC = ('E' << 24) | ('D' << 16) | ('C' << 8) | 'P';
+	static final byte VERSION = 1;
+	private static final int SLOT = 48;
+	private static final int SLOT_DATA = 8 * 4 + 4 * 2;
+	static final long DATA = 8 + 2 * SLOT;
+	private static final int BUFFER = 1 << 16;
+	private static final int MAX_RECORD = 2 + 3 * 10;
+	// Deeper than any AVL tree with fewer than 2^31 nodes.
+	private static final int MAX_DEPTH = 64;
+	// Files are not compacted before they have grown by this much.
+	private static final long COMPACT_MIN = 1 << 16;
+	// Node.saved holds the generation above the low OFFSET_BITS bits, and the
+	// offset in them. Generations wrap around after 2^23, far more files and
+	// compactions than a subtree outside the tree is likely to outlive.
+	private static final int OFFSET_BITS = 40;
+	private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+	private static final long GENERATION_MASK = (1L << (63 - OFFSET_BITS)) - 1;
+	private static final AtomicLong GENERATIONS = new AtomicLong();
+
+	private final File file;
+	private EditTree tree;
+	private FileChannel channel;
+	private long sequence;
+	private long end;
+	private long base;
+	// The tag of the offsets saved in this file since it was opened or last
+	// compacted, already shifted into place.
+	private long generation = -1;
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+	private final CRC32 crc = new CRC32();
+	// File position of the first byte in buffer.
+	private long bufferStart;
+	// Set when a checkpoint fails part way, after it may have marked nodes
+	// saved that never were, so the next one must write everything.
+	private boolean failed;
+	// Where the inline nodes of the subtree readSubtree() just read end.
+	private long inlineEnd;
+
+	private CheckpointFile(File file, FileChannel channel) {
+		this.file = file;
+		this.channel = channel;
+	}
+
+	/**
+	 * Writes all of tree to file, replacing whatever was there, as the first
+	 * checkpoint of a new file.
+	 */
+	public static CheckpointFile create(File file, EditTree tree) throws IOException {
+		CheckpointFile checkpoints = new CheckpointFile(file, null);
+		checkpoints.tree = tree;
+		checkpoints.compact();
+		return checkpoints;
+	}
+
+	/**
+	 * Loads the tree saved by the last committed checkpoint in file, in O(n)
+	 * time, and keeps checkpointing it to file.
+	 *
+	 * @throws IOException if file can't be read, or is not a checkpoint file
+	 */
+	public static CheckpointFile open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			CheckpointFile checkpoints = new CheckpointFile(file, channel);
+			checkpoints.load();
+			return checkpoints;
+		}
+		catch(IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * The tree being checkpointed. Edit it freely between checkpoints.
+	 */
+	public EditTree getTree() {
+		return this.tree;
+	}
+
+	/**
+	 * @return the sequence number of the last committed checkpoint
+	 */
+	public long sequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * @return the length of the file
+	 */
+	public long length() {
+		return this.end;
+	}
+
+	/**
+	 * Saves the tree, writing only the nodes whose subtrees changed since the
+	 * last checkpoint, then forcing them and committing. Compacts the file
+	 * instead if it has grown too much.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long checkpoint() throws IOException {
+		if(this.failed || this.end - this.base > Math.max(this.base - DATA, COMPACT_MIN)) {
+			return compact();
+		}
+		long start = this.end;
+		try {
+			long root = writeTree(false);
+			this.channel.force(false);
+			commit(root);
+		}
+		catch(IOException e) {
+			this.failed = true;
+			throw e;
+		}
+		return this.end - start + SLOT;
+	}
+
+	/**
+	 * Writes the whole tree to a new file, forces it and renames it over this
+	 * one, dropping the old versions of nodes.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long compact() throws IOException {
+		File temp = new File(this.file.getPath() + ".tmp");
+		FileChannel old = this.channel;
+		long sequence = this.sequence;
+		long end = this.end;
+		long base = this.base;
+		long generation = this.generation;
+		this.generation = nextGeneration();
+		this.channel = FileChannel.open(temp.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer header = ByteBuffer.allocate((int) DATA);
+			header.putInt(MAGIC);
+			header.put(VERSION);
+			header.clear();
+			write(header, 0);
+			this.end = DATA;
+			long root = writeTree(true);
+			this.base = this.end;
+			commit(root);
+			Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(IOException e) {
+			this.channel.close();
+			this.channel = old;
+			this.sequence = sequence;
+			this.end = end;
+			this.base = base;
+			this.generation = generation;
+			this.failed = true;
+			throw e;
+		}
+		this.failed = false;
+		if(old != null) {
+			old.close();
+		}
+		return this.end;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	/**
+	 * Appends the unsaved nodes, or all of them if full, at the end of the
+	 * file.
+	 *
+	 * @return the offset of the root
+	 */
+	private long writeTree(boolean full) throws IOException {
+		Node root = this.tree.root;
+		this.buffer.clear();
+		this.bufferStart = this.end;
+		long offset;
+		if(root == Node.NULL_NODE) {
+			offset = -1;
+		}
+		else if(!full && savedOffset(root) >= 0) {
+			offset = savedOffset(root);
+		}
+		else {
+			offset = writeSubtree(root, full);
+		}
+		flush();
+		this.end = this.bufferStart;
+		return offset;
+	}
+
+	private long writeSubtree(Node node, boolean full) throws IOException {
+		if(this.buffer.remaining() < MAX_RECORD) {
+			flush();
+		}
+		long offset = this.bufferStart + this.buffer.position();
+		if(offset > OFFSET_MASK) {
+			throw new IOException("checkpoint file too big");
+		}
+		long left = full ? -1 : savedOffset(node.left);
+		long right = full ? -1 : savedOffset(node.right);
+		boolean leftRef = left >= 0;
+		boolean rightRef = right >= 0;
+		this.buffer.putChar(node.data);
+		putVarint(((long) node.rank << 4) | (leftRef ? 8 : 0) | (rightRef ? 4 : 0) | node.balance.ordinal());
+		if(leftRef) {
+			putVarint(left);
+		}
+		if(rightRef) {
+			putVarint(right);
+		}
+		node.saved = this.generation | offset;
+		if(node.left != Node.NULL_NODE && !leftRef) {
+			writeSubtree(node.left, full);
+		}
+		if(node.right != Node.NULL_NODE && !rightRef) {
+			writeSubtree(node.right, full);
+		}
+		return offset;
+	}
+
+	private static long nextGeneration() {
+		return (GENERATIONS.incrementAndGet() & GENERATION_MASK) << OFFSET_BITS;
+	}
+
+	/**
+	 * @return where node was saved in this file, or -1 if it is empty, changed
+	 *         since, or was saved by another file or generation
+	 */
+	private long savedOffset(Node node) {
+		if(node == Node.NULL_NODE || (node.saved & ~OFFSET_MASK) != this.generation) {
+			return -1;
+		}
+		return node.saved & OFFSET_MASK;
+	}
+
+	private void putVarint(long value) {
+		while(value >= 0x80) {
+			this.buffer.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		this.buffer.put((byte) value);
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		this.bufferStart += write(this.buffer, this.bufferStart);
+		this.buffer.clear();
+	}
+
+	private int write(ByteBuffer bytes, long position) throws IOException {
+		int count = bytes.remaining();
+		while(bytes.hasRemaining()) {
+			position += this.channel.write(bytes, position);
+		}
+		return count;
+	}
+
+	/**
+	 * Writes and forces the next slot, making the nodes written so far the
+	 * saved tree.
+	 */
+	private void commit(long root) throws IOException {
+		long next = this.sequence + 1;
+		ByteBuffer slot = ByteBuffer.allocate(SLOT);
+		slot.putLong(next);
+		slot.putLong(root);
+		slot.putLong(this.end);
+		slot.putLong(this.base);
+		slot.putInt(this.tree.size());
+		slot.putInt(this.tree.totalRotationCount());
+		this.crc.reset();
+		this.crc.update(slot.array(), 0, SLOT_DATA);
+		slot.putInt((int) this.crc.getValue());
+		slot.flip();
+		write(slot, 8 + (next & 1) * SLOT);
+		this.channel.force(false);
+		this.sequence = next;
+	}
+
+	/**
+	 * Reads the slot with the highest sequence number and a good checksum,
+	 * and the tree it saved.
+	 */
+	private void load() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate((int) DATA);
+		while(header.hasRemaining()) {
+			if(this.channel.read(header, header.position()) < 0) {
+				throw new EOFException(this.file.toString());
+			}
+		}
+		header.flip();
+		if(header.getInt() != MAGIC) {
+			throw new IOException("not a checkpoint file");
+		}
+		byte version = header.get();
+		if(version != VERSION) {
+			throw new IOException("unknown checkpoint file version " + version);
+		}
+		long root = -1;
+		int size = 0;
+		int rotations = 0;
+		for(int i = 0; i < 2; i++) {
+			int at = 8 + i * SLOT;
+			this.crc.reset();
+			this.crc.update(header.array(), at, SLOT_DATA);
+			long sequence = header.getLong(at);
+			if(header.getInt(at + SLOT_DATA) != (int) this.crc.getValue() || sequence <= this.sequence) {
+				continue;
+			}
+			this.sequence = sequence;
+			root = header.getLong(at + 8);
+			this.end = header.getLong(at + 16);
+			this.base = header.getLong(at + 24);
+			size = header.getInt(at + 32);
+			rotations = header.getInt(at + 36);
+		}
+		if(this.sequence == 0) {
+			throw new IOException("corrupt checkpoint file: no committed checkpoint");
+		}
+		if(this.end < DATA || this.end > this.channel.size() || size < 0 || (root < 0) != (size == 0)) {
+			throw new IOException("corrupt checkpoint file: bad slot");
+		}
+		// Drop whatever a checkpoint that never committed wrote.
+		this.channel.truncate(this.end);
+		this.generation = nextGeneration();
+		this.buffer.clear().flip();
+		this.bufferStart = this.end;
+		try {
+			this.tree = new EditTree(size == 0 ? Node.NULL_NODE : readSubtree(root, size, 0), size);
+		}
+		catch(BufferUnderflowException e) {
+			throw new EOFException("corrupt checkpoint file: node past the end");
+		}
+		this.tree.setRotationCount(rotations);
+	}
+
+	/**
+	 * Reads the subtree of size nodes whose root was written at offset,
+	 * checking that its ranks fit and its balance codes are right.
+	 */
+	private Node readSubtree(long offset, int size, int depth) throws IOException {
+		if(depth == MAX_DEPTH) {
+			throw new IOException("corrupt checkpoint file: too deep");
+		}
+		if(offset < DATA || offset >= this.end) {
+			throw new IOException("corrupt checkpoint file: node at " + offset);
+		}
+		seek(offset);
+		Node node = new Node(this.buffer.getChar());
+		long value = getVarint();
+		long rank = value >>> 4;
+		int code = (int) (value & 3);
+		boolean leftRef = (value & 8) != 0;
+		boolean rightRef = (value & 4) != 0;
+		int rightSize = size - 1 - (int) rank;
+		if(rank >= size || code > Code.RIGHT.ordinal() || (leftRef && rank == 0) || (rightRef && rightSize == 0)) {
+			throw new IOException("corrupt checkpoint file: node " + value + " in subtree of " + size);
+		}
+		long left = leftRef ? getVarint() : -1;
+		long right = rightRef ? getVarint() : -1;
+		// Inline children follow this node, the right one after all of the
+		// left one's inline nodes.
+		long next = this.bufferStart + this.buffer.position();
+		node.left = Node.NULL_NODE;
+		if(leftRef) {
+			node.left = readSubtree(left, (int) rank, depth + 1);
+		}
+		else if(rank > 0) {
+			node.left = readSubtree(next, (int) rank, depth + 1);
+			next = this.inlineEnd;
+		}
+		node.right = Node.NULL_NODE;
+		if(rightRef) {
+			node.right = readSubtree(right, rightSize, depth + 1);
+		}
+		else if(rightSize > 0) {
+			node.right = readSubtree(next, rightSize, depth + 1);
+			next = this.inlineEnd;
+		}
+		node.rank = (int) rank;
+		node.leftsize = node.rank;
+		node.rightsize = rightSize;
+		node.height = Math.max(node.left.height, node.right.height) + 1;
+		node.restoreBalance();
+		if(node.balance.ordinal() != code || Math.abs(node.left.height - node.right.height) > 1) {
+			throw new IOException("corrupt checkpoint file: wrong balance code");
+		}
+		node.countNewlines();
+		node.saved = this.generation | offset;
+		this.inlineEnd = next;
+		return node;
+	}
+
+	private long getVarint() {
+		long value = 0;
+		for(int shift = 0;; shift += 7) {
+			byte b = this.buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if(b >= 0 || shift == 63) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Positions the buffer at offset, with the next MAX_RECORD bytes in it,
+	 * or as many as the file has.
+	 */
+	private void seek(long offset) throws IOException {
+		long index = offset - this.bufferStart;
+		if(index >= 0 && index + MAX_RECORD <= this.buffer.limit()) {
+			this.buffer.position((int) index);
+			return;
+		}
+		this.buffer.clear();
+		this.buffer.limit((int) Math.min(BUFFER, this.end - offset));
+		this.bufferStart = offset;
+		while(this.buffer.hasRemaining()) {
+			if(this.channel.read(this.buffer, offset + this.buffer.position()) < 0) {
+				break;
+			}
+		}
+		this.buffer.flip();
+	}
+}
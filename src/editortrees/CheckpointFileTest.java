@@ -0,0 +1,205 @@
+package editortrees;
+
+import static editortrees.TreeTestHelper.apply;
+import static editortrees.TreeTestHelper.assertSameTree;
+import static editortrees.TreeTestHelper.copyOf;
+import static editortrees.TreeTestHelper.randomEdit;
+import static editortrees.TreeTestHelper.randomTree;
+import static editortrees.TreeTestHelper.tempFiles;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.CheckpointFile}
+ */
+public class CheckpointFileTest {
+
+	private static File file() throws IOException {
+		return tempFiles("document.tree")[0];
+	}
+
+	/**
+	 * Makes a random edit to t, or now and then cuts and pastes its end back
+	 * on.
+	 */
+	private static void edit(EditTree t, Random random) {
+		if (random.nextInt(10) == 0 && t.size() > 0) {
+			EditTree tail = t.split(random.nextInt(t.size()));
+			t.concatenate(tail);
+		} else {
+			apply(t, randomEdit(random, t.size()));
+		}
+	}
+
+	private static void assertReopens(EditTree expected, File file) throws IOException {
+		CheckpointFile reopened = CheckpointFile.open(file);
+		assertSameTree(expected, reopened.getTree());
+		reopened.close();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File file = file();
+		CheckpointFile checkpoints = CheckpointFile.create(file, new EditTree());
+		assertEquals(1, checkpoints.sequence());
+		checkpoints.close();
+		assertReopens(new EditTree(), file);
+		EditTree t = randomTree(new Random(25), 10000);
+		checkpoints = CheckpointFile.create(file, t);
+		checkpoints.close();
+		assertReopens(t, file);
+	}
+
+	@Test
+	public void testCheckpointWritesOnlyChanges() throws IOException {
+		File file = file();
+		EditTree t = randomTree(new Random(26), 100000);
+		CheckpointFile checkpoints = CheckpointFile.create(file, t);
+		long full = checkpoints.length();
+		t.add('x', 5000);
+		long written = checkpoints.checkpoint();
+		assertTrue(written < 1000);
+		assertEquals(2, checkpoints.sequence());
+		assertTrue(checkpoints.checkpoint() < 100);
+		assertTrue(checkpoints.length() < full + written);
+		checkpoints.close();
+		assertReopens(t, file);
+	}
+
+	@Test
+	public void testRandomEditsAndCheckpoints() throws IOException {
+		File file = file();
+		Random random = new Random(27);
+		EditTree t = randomTree(random, 2000);
+		CheckpointFile checkpoints = CheckpointFile.create(file, t);
+		for (int round = 0; round < 300; round++) {
+			for (int i = random.nextInt(30); i > 0; i--) {
+				edit(t, random);
+			}
+			checkpoints.checkpoint();
+			if (round % 50 == 0) {
+				assertReopens(t, file);
+			}
+		}
+		checkpoints.close();
+		assertReopens(t, file);
+	}
+
+	@Test
+	public void testReopenedFileKeepsCheckpointing() throws IOException {
+		File file = file();
+		Random random = new Random(28);
+		CheckpointFile checkpoints = CheckpointFile.create(file, randomTree(random, 5000));
+		checkpoints.close();
+		for (int round = 0; round < 5; round++) {
+			checkpoints = CheckpointFile.open(file);
+			EditTree t = checkpoints.getTree();
+			for (int i = 0; i < 100; i++) {
+				edit(t, random);
+			}
+			assertTrue(checkpoints.checkpoint() < 20000);
+			checkpoints.close();
+			assertReopens(t, file);
+		}
+	}
+
+	@Test
+	public void testFileIsCompacted() throws IOException {
+		File file = file();
+		Random random = new Random(29);
+		EditTree t = randomTree(random, 50000);
+		CheckpointFile checkpoints = CheckpointFile.create(file, t);
+		long full = checkpoints.length();
+		for (int round = 0; round < 2000; round++) {
+			edit(t, random);
+			checkpoints.checkpoint();
+			assertTrue(checkpoints.length() < 3 * full);
+		}
+		checkpoints.close();
+		assertReopens(t, file);
+	}
+
+	@Test
+	public void testCutAndPasteAroundCompaction() throws IOException {
+		File file = file();
+		Random random = new Random(31);
+		EditTree t = randomTree(random, 5000);
+		CheckpointFile checkpoints = CheckpointFile.create(file, t);
+		EditTree cut = t.split(2500);
+		checkpoints.compact();
+		t.concatenate(cut);
+		checkpoints.checkpoint();
+		assertReopens(t, file);
+
+		EditTree removed = t.delete(1000, 2000);
+		checkpoints.checkpoint();
+		checkpoints.compact();
+		t.concatenate(removed);
+		checkpoints.checkpoint();
+		assertReopens(t, file);
+
+		// Without a compaction in between, the pasted subtrees are still in
+		// the file.
+		cut = t.split(100);
+		checkpoints.checkpoint();
+		t.concatenate(cut);
+		assertTrue(checkpoints.checkpoint() < 1000);
+		checkpoints.close();
+		assertReopens(t, file);
+	}
+
+	@Test
+	public void testConcatenateTreeFromAnotherFile() throws IOException {
+		File file = file();
+		File other = file();
+		Random random = new Random(32);
+		CheckpointFile checkpoints = CheckpointFile.create(file, randomTree(random, 100));
+		CheckpointFile others = CheckpointFile.create(other, randomTree(random, 3000));
+		others.close();
+		others = CheckpointFile.open(other);
+		EditTree t = checkpoints.getTree();
+		t.concatenate(others.getTree());
+		checkpoints.checkpoint();
+		checkpoints.close();
+		others.close();
+		assertReopens(t, file);
+	}
+
+	@Test
+	public void testUncommittedCheckpointIsIgnored() throws IOException {
+		File file = file();
+		EditTree t = randomTree(new Random(30), 1000);
+		CheckpointFile checkpoints = CheckpointFile.create(file, t);
+		t.add("committed", 0);
+		checkpoints.checkpoint();
+		long length = checkpoints.length();
+		checkpoints.close();
+		EditTree expected = copyOf(t);
+
+		// Nodes written by a checkpoint that crashed before its slot did.
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		raw.seek(length);
+		raw.write(new byte[] { 1, 2, 3, 4, 5 });
+		raw.close();
+		assertReopens(expected, file);
+		assertEquals(length, file.length());
+
+		// A slot torn while it was written.
+		checkpoints = CheckpointFile.open(file);
+		checkpoints.getTree().add("lost", 0);
+		checkpoints.checkpoint();
+		checkpoints.close();
+		raw = new RandomAccessFile(file, "rw");
+		raw.seek(8 + 48 * (checkpoints.sequence() & 1) + 20);
+		raw.write(0xFF);
+		raw.close();
+		assertReopens(expected, file);
+	}
+}
@@ -0,0 +1,300 @@
+package editortrees;
+
+import editortrees.Node.Code;
+
+/**
+ * A node in a height-balanced tree whose elements are packed runs of
+ * characters rather than single characters. Ranks and sizes are measured in
+ * characters, so in-order position arithmetic works exactly like it does for
+ * {@link Node}, except that one node answers for a whole range of positions.
+ *
+ * Except for the NULL_NODE, one node cannot belong to two different trees.
+ */
+public class ChunkNode {
+
+	char[] chars; // packed characters; only the first count are in use
+	int count;
+	ChunkNode left, right;
+	int rank; // number of characters in the left subtree
+	int size; // number of characters in this whole subtree
+	int height = 1;
+	Code balance = Code.SAME;
+
+	static final ChunkNode NULL_NODE = new ChunkNode();
+
+	private ChunkNode() {
+		this.chars = new char[0];
+		this.height = 0;
+	}
+
+	/**
+	 * Makes a leaf holding chars[from, to) in a new array with the given
+	 * capacity.
+	 */
+	ChunkNode(char[] source, int from, int to, int capacity) {
+		this.chars = new char[capacity];
+		System.arraycopy(source, from, this.chars, 0, to - from);
+		this.count = to - from;
+		this.left = NULL_NODE;
+		this.right = NULL_NODE;
+		this.size = this.count;
+	}
+
+	/**
+	 * Builds a perfectly balanced tree from the chunks chunks[l..r].
+	 */
+	static ChunkNode buildTree(ChunkNode[] chunks, int l, int r) {
+		if(l > r) {
+			return NULL_NODE;
+		}
+		int mid = (l + r) / 2;
+		ChunkNode node = chunks[mid];
+		node.left = buildTree(chunks, l, mid - 1);
+		node.right = buildTree(chunks, mid + 1, r);
+		node.update();
+		return node;
+	}
+
+	/**
+	 * Recomputes rank, size, height and balance code from the children, which
+	 * must already be correct.
+	 */
+	void update() {
+		this.rank = this.left.size;
+		this.size = this.left.size + this.count + this.right.size;
+		this.height = Math.max(this.left.height, this.right.height) + 1;
+		if(this.left.height > this.right.height) {
+			this.balance = Code.LEFT;
+		}
+		else if(this.left.height < this.right.height) {
+			this.balance = Code.RIGHT;
+		}
+		else {
+			this.balance = Code.SAME;
+		}
+	}
+
+	char get(int pos) {
+		ChunkNode current = this;
+		while(current != NULL_NODE) {
+			if(pos < current.rank) {
+				current = current.left;
+			}
+			else if(pos < current.rank + current.count) {
+				return current.chars[pos - current.rank];
+			}
+			else {
+				pos -= current.rank + current.count;
+				current = current.right;
+			}
+		}
+		throw new IndexOutOfBoundsException();
+	}
+
+	/**
+	 * Inserts ch so that it ends up at in-order position pos of this subtree.
+	 * A full chunk is split in half, and the upper half becomes a new node
+	 * hung as the leftmost node of the right subtree.
+	 *
+	 * @return the new root of this subtree
+	 */
+	ChunkNode add(char ch, int pos, int capacity, ChunkedEditTree.Rotations rotations) {
+		if(this == NULL_NODE) {
+			ChunkNode leaf = new ChunkNode(new char[] { ch }, 0, 1, capacity);
+			return leaf;
+		}
+		if(pos < this.rank || (pos == this.rank && this.left != NULL_NODE && this.count == this.chars.length)) {
+			this.left = this.left.add(ch, pos, capacity, rotations);
+		}
+		else if(pos <= this.rank + this.count) {
+			int offset = pos - this.rank;
+			if(this.count == this.chars.length) {
+				int half = this.count / 2;
+				ChunkNode upper = new ChunkNode(this.chars, half, this.count, capacity);
+				this.count = half;
+				// Insert before hanging the new node so the sizes computed on
+				// the way back up already include the new character.
+				if(offset > half) {
+					upper.insertAt(ch, offset - half);
+				}
+				else {
+					this.insertAt(ch, offset);
+				}
+				this.right = this.right.addMin(upper, rotations);
+			}
+			else {
+				this.insertAt(ch, offset);
+			}
+		}
+		else {
+			this.right = this.right.add(ch, pos - this.rank - this.count, capacity, rotations);
+		}
+		return this.rebalance(rotations);
+	}
+
+	private void insertAt(char ch, int offset) {
+		System.arraycopy(this.chars, offset, this.chars, offset + 1, this.count - offset);
+		this.chars[offset] = ch;
+		this.count++;
+	}
+
+	/**
+	 * Hangs node as the new leftmost node of this subtree.
+	 */
+	private ChunkNode addMin(ChunkNode node, ChunkedEditTree.Rotations rotations) {
+		if(this == NULL_NODE) {
+			node.left = NULL_NODE;
+			node.right = NULL_NODE;
+			node.update();
+			return node;
+		}
+		this.left = this.left.addMin(node, rotations);
+		return this.rebalance(rotations);
+	}
+
+	/**
+	 * Removes the character at in-order position pos of this subtree. A node
+	 * whose chunk becomes empty is unlinked; a nearly empty chunk absorbs its
+	 * in-order successor when both fit in one chunk, so the tree does not
+	 * degrade into single-character nodes after many deletions.
+	 *
+	 * @return the new root of this subtree
+	 */
+	ChunkNode delete(int pos, ChunkedEditTree.Rotations rotations) {
+		if(pos < this.rank) {
+			this.left = this.left.delete(pos, rotations);
+		}
+		else if(pos < this.rank + this.count) {
+			int offset = pos - this.rank;
+			System.arraycopy(this.chars, offset + 1, this.chars, offset, this.count - offset - 1);
+			this.count--;
+			if(this.count == 0) {
+				return this.unlink(rotations);
+			}
+			if(this.count < this.chars.length / 4 && this.right != NULL_NODE) {
+				ChunkNode successor = this.right.min();
+				if(this.count + successor.count <= this.chars.length / 2) {
+					System.arraycopy(successor.chars, 0, this.chars, this.count, successor.count);
+					this.count += successor.count;
+					this.right = this.right.removeMin(rotations);
+				}
+			}
+		}
+		else {
+			this.right = this.right.delete(pos - this.rank - this.count, rotations);
+		}
+		return this.rebalance(rotations);
+	}
+
+	/**
+	 * Removes this node from its subtree, replacing it with its in-order
+	 * successor node when it has two children.
+	 */
+	private ChunkNode unlink(ChunkedEditTree.Rotations rotations) {
+		if(this.left == NULL_NODE) {
+			return this.right;
+		}
+		if(this.right == NULL_NODE) {
+			return this.left;
+		}
+		ChunkNode successor = this.right.min();
+		ChunkNode newRight = this.right.removeMin(rotations);
+		successor.left = this.left;
+		successor.right = newRight;
+		return successor.rebalance(rotations);
+	}
+
+	private ChunkNode min() {
+		ChunkNode current = this;
+		while(current.left != NULL_NODE) {
+			current = current.left;
+		}
+		return current;
+	}
+
+	private ChunkNode removeMin(ChunkedEditTree.Rotations rotations) {
+		if(this.left == NULL_NODE) {
+			return this.right;
+		}
+		this.left = this.left.removeMin(rotations);
+		return this.rebalance(rotations);
+	}
+
+	/**
+	 * Updates this node's fields and restores the AVL property here with at
+	 * most one single or double rotation.
+	 */
+	private ChunkNode rebalance(ChunkedEditTree.Rotations rotations) {
+		this.update();
+		if(this.left.height - this.right.height > 1) {
+			if(this.left.balance == Code.RIGHT) {
+				this.left = this.left.rotateLeft();
+				rotations.count++;
+			}
+			rotations.count++;
+			return this.rotateRight();
+		}
+		if(this.right.height - this.left.height > 1) {
+			if(this.right.balance == Code.LEFT) {
+				this.right = this.right.rotateRight();
+				rotations.count++;
+			}
+			rotations.count++;
+			return this.rotateLeft();
+		}
+		return this;
+	}
+
+	private ChunkNode rotateLeft() {
+		ChunkNode child = this.right;
+		this.right = child.left;
+		child.left = this;
+		this.update();
+		child.update();
+		return child;
+	}
+
+	private ChunkNode rotateRight() {
+		ChunkNode child = this.left;
+		this.left = child.right;
+		child.right = this;
+		this.update();
+		child.update();
+		return child;
+	}
+
+	/**
+	 * Appends the characters at positions [from, to) of this subtree.
+	 */
+	void get(int from, int to, StringBuilder string) {
+		if(this == NULL_NODE || from >= to) {
+			return;
+		}
+		if(from < this.rank) {
+			this.left.get(from, Math.min(to, this.rank), string);
+		}
+		int start = Math.max(from - this.rank, 0);
+		int end = Math.min(to - this.rank, this.count);
+		if(start < end) {
+			string.append(this.chars, start, end - start);
+		}
+		int offset = this.rank + this.count;
+		if(to > offset) {
+			this.right.get(Math.max(from - offset, 0), to - offset, string);
+		}
+	}
+
+	int nodeCount() {
+		if(this == NULL_NODE) {
+			return 0;
+		}
+		return this.left.nodeCount() + this.right.nodeCount() + 1;
+	}
+
+	int slowHeight() {
+		if(this == NULL_NODE) {
+			return -1;
+		}
+		return Math.max(this.left.slowHeight(), this.right.slowHeight()) + 1;
+	}
+}
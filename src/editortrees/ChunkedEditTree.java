@@ -0,0 +1,176 @@
+package editortrees;
+
+/**
+ * A height-balanced tree with rank that stores its text in packed chunks of
+ * characters instead of one {@link Node} per character. It supports the same
+ * character-level operations as {@link EditTree}, with ranks expressed in
+ * characters, but for large documents it has roughly chunkCapacity / 2 times
+ * fewer nodes, which cuts per-character object overhead and pointer chasing.
+ *
+ * The shape of the tree is not the same as an EditTree holding the same text,
+ * so there is no rank or debug string to compare against.
+ */
+public class ChunkedEditTree {
+
+	public static final int MIN_CHUNK_CAPACITY = 64;
+	public static final int MAX_CHUNK_CAPACITY = 1024;
+	public static final int DEFAULT_CHUNK_CAPACITY = 256;
+
+	ChunkNode root;
+	private final int capacity;
+	private int count = 0;
+
+	/**
+	 * Construct an empty tree using the default chunk capacity.
+	 */
+	public ChunkedEditTree() {
+		this(DEFAULT_CHUNK_CAPACITY);
+	}
+
+	/**
+	 * Construct an empty tree whose chunks hold up to chunkCapacity characters.
+	 *
+	 * @param chunkCapacity
+	 * @throws IllegalArgumentException if chunkCapacity is outside
+	 *                                  [MIN_CHUNK_CAPACITY, MAX_CHUNK_CAPACITY]
+	 */
+	public ChunkedEditTree(int chunkCapacity) {
+		if(chunkCapacity < MIN_CHUNK_CAPACITY || chunkCapacity > MAX_CHUNK_CAPACITY) {
+			throw new IllegalArgumentException();
+		}
+		this.capacity = chunkCapacity;
+		this.root = ChunkNode.NULL_NODE;
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time. Chunks are filled to
+	 * three quarters so that the first edits in any chunk do not split it.
+	 *
+	 * @param s
+	 */
+	public ChunkedEditTree(String s) {
+		this(s, DEFAULT_CHUNK_CAPACITY);
+	}
+
+	public ChunkedEditTree(String s, int chunkCapacity) {
+		this(chunkCapacity);
+		if(s.length() == 0) {
+			return;
+		}
+		char[] source = s.toCharArray();
+		int fill = this.capacity * 3 / 4;
+		int chunkCount = (source.length + fill - 1) / fill;
+		ChunkNode[] chunks = new ChunkNode[chunkCount];
+		for(int i = 0; i < chunkCount; i++) {
+			int from = i * fill;
+			chunks[i] = new ChunkNode(source, from, Math.min(from + fill, source.length), this.capacity);
+		}
+		this.root = ChunkNode.buildTree(chunks, 0, chunkCount - 1);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder(this.size());
+		this.root.get(0, this.size(), string);
+		return string.toString();
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+		return this.root.size;
+	}
+
+	/**
+	 * @return the number of chunk nodes in this tree
+	 */
+	public int nodeCount() {
+		return this.root.nodeCount();
+	}
+
+	/**
+	 * @param ch character to add to the end of this tree.
+	 */
+	public void add(char ch) {
+		add(ch, size());
+	}
+
+	/**
+	 * @param ch  character to add
+	 * @param pos character added in this in-order position. Valid positions
+	 *            range from 0 to the size of the tree, inclusive.
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos > size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		Rotations rotations = new Rotations();
+		this.root = this.root.add(ch, pos, this.capacity, rotations);
+		this.count += rotations.count;
+	}
+
+	/**
+	 * @param pos position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException if pos is negative or too big.
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos >= size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return this.root.get(pos);
+	}
+
+	/**
+	 * Operates in O(log n + length).
+	 *
+	 * @param pos    location of the beginning of the string to retrieve
+	 * @param length length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if(pos < 0 || length < 0 || pos >= size() || pos + length - 1 >= size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		StringBuilder string = new StringBuilder(length);
+		this.root.get(pos, pos + length, string);
+		return string.toString();
+	}
+
+	/**
+	 * @param pos position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos >= size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		char value = this.root.get(pos);
+		Rotations rotations = new Rotations();
+		this.root = this.root.delete(pos, rotations);
+		this.count += rotations.count;
+		return value;
+	}
+
+	/**
+	 * @return the total number of rotations done in this tree since it was
+	 *         created. A double rotation counts as two.
+	 */
+	public int totalRotationCount() {
+		return this.count;
+	}
+
+	public int slowHeight() {
+		return this.root.slowHeight();
+	}
+
+	static class Rotations {
+		int count = 0;
+	}
+}
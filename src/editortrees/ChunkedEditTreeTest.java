@@ -0,0 +1,132 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.ChunkedEditTree}
+ */
+public class ChunkedEditTreeTest {
+
+	private static String repeat(String s, int times) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < times; i++) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testEmpty() {
+		ChunkedEditTree t = new ChunkedEditTree();
+		assertEquals("", t.toString());
+		assertEquals(0, t.size());
+		assertEquals(0, t.nodeCount());
+	}
+
+	@Test
+	public void testAppendAndGet() {
+		ChunkedEditTree t = new ChunkedEditTree(64);
+		String expected = repeat("abcdefghij", 100);
+		for (int i = 0; i < expected.length(); i++) {
+			t.add(expected.charAt(i));
+		}
+		assertEquals(expected, t.toString());
+		assertEquals(expected.length(), t.size());
+		for (int i = 0; i < expected.length(); i++) {
+			assertEquals(expected.charAt(i), t.get(i));
+		}
+		assertTrue(t.nodeCount() < expected.length() / 16);
+	}
+
+	@Test
+	public void testStringConstructor() {
+		String s = repeat("The quick brown fox jumps over the lazy dog. ", 1000);
+		ChunkedEditTree t = new ChunkedEditTree(s);
+		assertEquals(s, t.toString());
+		assertEquals(s.substring(1234, 5678), t.get(1234, 5678 - 1234));
+		assertEquals("", t.get(s.length() - 1, 0));
+		assertTrue(t.nodeCount() <= s.length() / 100);
+		assertEquals(0, t.totalRotationCount());
+	}
+
+	@Test
+	public void testRandomEditsMatchStringBuilder() {
+		Random random = new Random(17);
+		ChunkedEditTree t = new ChunkedEditTree(64);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			if (expected.length() > 0 && random.nextInt(3) == 0) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else {
+				int pos = random.nextInt(expected.length() + 1);
+				char ch = (char) ('a' + random.nextInt(26));
+				t.add(ch, pos);
+				expected.insert(pos, ch);
+			}
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(expected.length(), t.size());
+		int n = t.nodeCount();
+		assertTrue(t.slowHeight() <= Math.ceil(1.44 * Math.log(n + 2) / Math.log(2)));
+	}
+
+	@Test
+	public void testDeleteEverything() {
+		String s = repeat("0123456789", 50);
+		ChunkedEditTree t = new ChunkedEditTree(s, 64);
+		for (int i = 0; i < s.length(); i++) {
+			assertEquals(s.charAt(i), t.delete(0));
+		}
+		assertEquals("", t.toString());
+		assertEquals(0, t.nodeCount());
+	}
+
+	@Test
+	public void testThrowsIndexExceptions() {
+		ChunkedEditTree t = new ChunkedEditTree("abc");
+		try {
+			t.add('x', 4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.get(3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.get(3, 0);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.get(1, 3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.delete(-1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			new ChunkedEditTree(16);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package editortrees;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An EditTree that any number of threads may read while one thread edits it,
+ * for example a render or indexing thread reading while the typing thread
+ * writes. Edits take a write lock. Reads first run optimistically, without
+ * locking, and keep their answer only if no edit ran meanwhile; otherwise they
+ * retry under a read lock. An optimistic read can see the tree half way
+ * through a rotation, so it may fail in strange ways (such as a stack that is
+ * too short); those failures only mean that the read has to be retried.
+ */
+public class ConcurrentEditTree {
+
+	private final EditTree tree;
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * A read to run optimistically, or under the read lock if that fails.
+	 */
+	private abstract static class Read<T> {
+		abstract T run();
+	}
+
+	/**
+	 * Construct an empty tree
+	 */
+	public ConcurrentEditTree() {
+		this.tree = new EditTree();
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time.
+	 * 
+	 * @param s
+	 */
+	public ConcurrentEditTree(String s) {
+		this.tree = new EditTree(s);
+	}
+
+	/**
+	 * Create a tree holding a copy of e, which the caller may keep using.
+	 * 
+	 * @param e
+	 */
+	public ConcurrentEditTree(EditTree e) {
+		this.tree = new EditTree(e);
+	}
+
+	public int size() {
+		long stamp = this.lock.tryOptimisticRead();
+		int size = this.tree.size();
+		if(this.lock.validate(stamp)) {
+			return size;
+		}
+		stamp = this.lock.readLock();
+		try {
+			return this.tree.size();
+		}
+		finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	public char get(final int pos) throws IndexOutOfBoundsException {
+		return read(new Read<Character>() {
+			@Override
+			Character run() {
+				return ConcurrentEditTree.this.tree.get(pos);
+			}
+		});
+	}
+
+	public String get(final int pos, final int length) throws IndexOutOfBoundsException {
+		return read(new Read<String>() {
+			@Override
+			String run() {
+				return ConcurrentEditTree.this.tree.get(pos, length);
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		return read(new Read<String>() {
+			@Override
+			String run() {
+				return ConcurrentEditTree.this.tree.toString();
+			}
+		});
+	}
+
+	/**
+	 * @return an independent copy of the current contents
+	 */
+	public EditTree snapshot() {
+		long stamp = this.lock.readLock();
+		try {
+			return new EditTree(this.tree);
+		}
+		finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	public void add(char ch) {
+		long stamp = this.lock.writeLock();
+		try {
+			this.tree.add(ch);
+		}
+		finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+		long stamp = this.lock.writeLock();
+		try {
+			this.tree.add(ch, pos);
+		}
+		finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	public void add(CharSequence s, int pos) throws IndexOutOfBoundsException {
+		long stamp = this.lock.writeLock();
+		try {
+			this.tree.add(s, pos);
+		}
+		finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		long stamp = this.lock.writeLock();
+		try {
+			return this.tree.delete(pos);
+		}
+		finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @return the deleted characters
+	 */
+	public String delete(int pos, int length) throws IndexOutOfBoundsException {
+		long stamp = this.lock.writeLock();
+		try {
+			return this.tree.delete(pos, length).toString();
+		}
+		finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Runs read without locking, and again under the read lock if an edit
+	 * overlapped it. Anything the optimistic run threw is only rethrown if no
+	 * edit overlapped it, since otherwise the tree it saw may not have been
+	 * valid.
+	 */
+	private <T> T read(Read<T> read) {
+		long stamp = this.lock.tryOptimisticRead();
+		if(stamp != 0) {
+			try {
+				T result = read.run();
+				if(this.lock.validate(stamp)) {
+					return result;
+				}
+			}
+			catch(RuntimeException e) {
+				if(this.lock.validate(stamp)) {
+					throw e;
+				}
+			}
+		}
+		stamp = this.lock.readLock();
+		try {
+			return read.run();
+		}
+		finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.ConcurrentEditTree}
+ */
+public class ConcurrentEditTreeTest {
+
+	private static final String BASE = "the quick brown fox jumps over the lazy dog";
+
+	private static String withoutMarks(String s) {
+		return s.replace("#", "");
+	}
+
+	@Test
+	public void testSingleThreaded() {
+		ConcurrentEditTree t = new ConcurrentEditTree("abc");
+		t.add('d');
+		t.add('_', 0);
+		t.add("123", 2);
+		assertEquals("_a123bcd", t.toString());
+		assertEquals('1', t.get(2));
+		assertEquals("123b", t.get(2, 4));
+		assertEquals("12", t.delete(2, 2));
+		assertEquals('_', t.delete(0));
+		assertEquals("a3bcd", t.toString());
+		assertEquals(5, t.size());
+		EditTree copy = t.snapshot();
+		t.add('!');
+		assertEquals("a3bcd", copy.toString());
+		try {
+			t.get(6);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	/**
+	 * The writer only ever adds and removes #'s, so every read must see the
+	 * base text once the #'s are taken out, however it overlaps the edits.
+	 */
+	@Test
+	public void testReadersSeeConsistentTextWhileWriting() throws InterruptedException {
+		final ConcurrentEditTree t = new ConcurrentEditTree(BASE);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int r = 0; r < 3; r++) {
+			final int seed = r;
+			Thread reader = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					while (!done.get() && failure.get() == null) {
+						String whole = t.toString();
+						if (!withoutMarks(whole).equals(BASE)) {
+							failure.set("toString saw " + whole);
+						}
+						int size = t.size();
+						if (size > 0) {
+							try {
+								int pos = random.nextInt(size);
+								String part = t.get(pos, Math.min(size - pos, 5));
+								if (!BASE.contains(withoutMarks(part))) {
+									failure.set("get saw " + part);
+								}
+							} catch (IndexOutOfBoundsException e) {
+								// the writer shrank the tree after size() was read
+							}
+						}
+					}
+				}
+			};
+			readers.add(reader);
+			reader.start();
+		}
+		Random random = new Random(99);
+		List<Integer> marks = new ArrayList<Integer>();
+		for (int i = 0; i < 20000 && failure.get() == null; i++) {
+			if (random.nextBoolean() || marks.isEmpty()) {
+				int pos = random.nextInt(t.size() + 1);
+				t.add('#', pos);
+				marks.add(pos);
+			} else {
+				int size = t.size();
+				int pos = random.nextInt(size);
+				while (t.get(pos) != '#') {
+					pos = (pos + 1) % size;
+				}
+				t.delete(pos);
+				marks.remove(0);
+			}
+		}
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (failure.get() != null) {
+			fail(failure.get());
+		}
+		assertEquals(BASE.length() + marks.size(), t.size());
+		assertEquals(BASE, withoutMarks(t.toString()));
+	}
+
+	/**
+	 * Trees share the NULL_NODE, so editing two trees on two threads must not
+	 * disturb either.
+	 */
+	@Test
+	public void testSeparateTreesOnSeparateThreads() throws InterruptedException {
+		final EditTree[] trees = new EditTree[4];
+		final String[] expected = new String[trees.length];
+		Thread[] threads = new Thread[trees.length];
+		for (int i = 0; i < trees.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(index);
+					EditTree t = new EditTree();
+					StringBuilder sb = new StringBuilder();
+					for (int j = 0; j < 20000; j++) {
+						if (sb.length() > 0 && random.nextInt(3) == 0) {
+							int pos = random.nextInt(sb.length());
+							t.delete(pos);
+							sb.deleteCharAt(pos);
+						} else {
+							int pos = random.nextInt(sb.length() + 1);
+							char ch = (char) ('a' + random.nextInt(26));
+							t.add(ch, pos);
+							sb.insert(pos, ch);
+						}
+					}
+					trees[index] = t;
+					expected[index] = sb.toString();
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (int i = 0; i < trees.length; i++) {
+			assertEquals(expected[i], trees[i].toString());
+			assertTrue(trees[i].ranksMatchLeftSubtreeSize());
+			assertTrue(trees[i].balanceCodesAreCorrect());
+			assertEquals(trees[i].slowHeight(), trees[i].fastHeight());
+		}
+		assertEquals(0, Node.NULL_NODE.height);
+	}
+}
@@ -0,0 +1,174 @@
+package editortrees;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Reads an EditTree in order, in either direction, without calling get(int)
+ * for every character or building the whole string. A cursor sits between two
+ * characters, at a position from 0 to the size of the tree. Seeking to a
+ * position costs O(log n); after that, next() and previous() are O(1)
+ * amortized, since they only walk from one node to its neighbor using the
+ * stack of nodes from the root down. Nothing is allocated after the first
+ * seek.
+ *
+ * Editing the tree changes the nodes the stack refers to, so after an edit the
+ * cursor must be positioned again with seek() before it is used.
+ */
+public class Cursor {
+
+	private final EditTree tree;
+	// The path from the root down to the node holding the character at pos,
+	// or, once pos is the size of the tree, to the node holding the last one.
+	private Node[] path = new Node[0];
+	private int depth;
+	private int pos;
+	private int size;
+
+	Cursor(EditTree tree, int pos) {
+		this.tree = tree;
+		seek(pos);
+	}
+
+	/**
+	 * Moves this cursor to just before the character at pos, in O(log n).
+	 *
+	 * @param pos from 0 to the size of the tree, inclusive
+	 * @throws IndexOutOfBoundsException if pos is negative or too big.
+	 */
+	public void seek(int pos) throws IndexOutOfBoundsException {
+		Node root = this.tree.root;
+		this.size = this.tree.size();
+		if(pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		if(this.path.length < root.height) {
+			this.path = new Node[root.height];
+		}
+		this.pos = pos;
+		this.depth = 0;
+		int index = Math.min(pos, this.size - 1);
+		Node current = root;
+		while(current != Node.NULL_NODE) {
+			this.path[this.depth++] = current;
+			if(index == current.rank) {
+				return;
+			}
+			if(index < current.rank) {
+				current = current.left;
+			}
+			else {
+				index = index - current.rank - 1;
+				current = current.right;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of characters before this cursor
+	 */
+	public int position() {
+		return this.pos;
+	}
+
+	public boolean hasNext() {
+		return this.pos < this.size;
+	}
+
+	public boolean hasPrevious() {
+		return this.pos > 0;
+	}
+
+	/**
+	 * @return the character after this cursor, which then moves past it
+	 * @throws NoSuchElementException if the cursor is at the end of the tree.
+	 */
+	public char next() throws NoSuchElementException {
+		if(this.pos >= this.size) {
+			throw new NoSuchElementException();
+		}
+		char ch = this.path[this.depth - 1].data;
+		if(++this.pos < this.size) {
+			toSuccessor();
+		}
+		return ch;
+	}
+
+	/**
+	 * @return the character before this cursor, which then moves before it
+	 * @throws NoSuchElementException if the cursor is at the start of the
+	 *                                tree.
+	 */
+	public char previous() throws NoSuchElementException {
+		if(this.pos <= 0) {
+			throw new NoSuchElementException();
+		}
+		// At the end the path already ends at the last character.
+		if(this.pos-- < this.size) {
+			toPredecessor();
+		}
+		return this.path[this.depth - 1].data;
+	}
+
+	/**
+	 * @return the character after this cursor, without moving it
+	 * @throws NoSuchElementException if the cursor is at the end of the tree.
+	 */
+	public char peek() throws NoSuchElementException {
+		if(this.pos >= this.size) {
+			throw new NoSuchElementException();
+		}
+		return this.path[this.depth - 1].data;
+	}
+
+	/**
+	 * Reads characters forward into chars, the way next() would one at a
+	 * time, but without checking for the end of the tree at every one.
+	 * 
+	 * @return the number of characters read, which is less than length only
+	 *         if the cursor reached the end of the tree
+	 */
+	public int read(char[] chars, int offset, int length) {
+		int count = Math.min(length, this.size - this.pos);
+		for(int i = 0; i < count; i++) {
+			chars[offset + i] = this.path[this.depth - 1].data;
+			if(++this.pos < this.size) {
+				toSuccessor();
+			}
+		}
+		return count;
+	}
+
+	private void toSuccessor() {
+		Node current = this.path[this.depth - 1];
+		if(current.right != Node.NULL_NODE) {
+			current = current.right;
+			while(current != Node.NULL_NODE) {
+				this.path[this.depth++] = current;
+				current = current.left;
+			}
+			return;
+		}
+		// Climb out of right subtrees; the first node we came up to from the
+		// left is next.
+		while(this.path[this.depth - 2].right == this.path[this.depth - 1]) {
+			this.depth--;
+		}
+		this.depth--;
+	}
+
+	private void toPredecessor() {
+		Node current = this.path[this.depth - 1];
+		if(current.left != Node.NULL_NODE) {
+			current = current.left;
+			while(current != Node.NULL_NODE) {
+				this.path[this.depth++] = current;
+				current = current.right;
+			}
+			return;
+		}
+		while(this.path[this.depth - 2].left == this.path[this.depth - 1]) {
+			this.depth--;
+		}
+		this.depth--;
+	}
+}
@@ -0,0 +1,136 @@
+package editortrees;
+
+import static editortrees.TreeTestHelper.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.Cursor}
+ */
+public class CursorTest {
+
+	@Test
+	public void testForwardAndBackward() {
+		EditTree t = new EditTree("abcdefg");
+		Cursor c = t.cursor();
+		StringBuilder sb = new StringBuilder();
+		while (c.hasNext()) {
+			sb.append(c.next());
+		}
+		assertEquals("abcdefg", sb.toString());
+		assertEquals(7, c.position());
+		sb.setLength(0);
+		while (c.hasPrevious()) {
+			sb.append(c.previous());
+		}
+		assertEquals("gfedcba", sb.toString());
+		assertEquals(0, c.position());
+	}
+
+	@Test
+	public void testEmptyTree() {
+		Cursor c = new EditTree().cursor();
+		assertFalse(c.hasNext());
+		assertFalse(c.hasPrevious());
+		try {
+			c.next();
+			fail("Did not throw NoSuchElementException");
+		} catch (NoSuchElementException e) {
+			// success
+		}
+		try {
+			c.previous();
+			fail("Did not throw NoSuchElementException");
+		} catch (NoSuchElementException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testSeekAndTurnAround() {
+		EditTree t = new EditTree();
+		for (char ch = 'a'; ch <= 'z'; ch++) {
+			t.add(ch);
+		}
+		Cursor c = t.cursor(13);
+		assertEquals('n', c.peek());
+		assertEquals('n', c.next());
+		assertEquals('n', c.previous());
+		assertEquals('m', c.previous());
+		c.seek(26);
+		assertFalse(c.hasNext());
+		assertEquals('z', c.previous());
+		assertEquals('z', c.next());
+		try {
+			c.seek(27);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testRandomWalks() {
+		Random random = new Random(15);
+		for (int size = 0; size < 200; size += 7) {
+			String s = randomString(random, size);
+			EditTree t = new EditTree();
+			for (int i = 0; i < size; i++) {
+				t.add(s.charAt(i), random.nextInt(i + 1));
+			}
+			s = t.toString();
+			Cursor c = t.cursor(random.nextInt(size + 1));
+			for (int i = 0; i < 1000; i++) {
+				int pos = c.position();
+				assertEquals(pos < size, c.hasNext());
+				assertEquals(pos > 0, c.hasPrevious());
+				int move = random.nextInt(10);
+				if (move == 0) {
+					c.seek(random.nextInt(size + 1));
+				} else if (move < 6 && c.hasNext()) {
+					assertEquals(s.charAt(pos), c.next());
+					assertEquals(pos + 1, c.position());
+				} else if (c.hasPrevious()) {
+					assertEquals(s.charAt(pos - 1), c.previous());
+					assertEquals(pos - 1, c.position());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRead() {
+		EditTree t = new EditTree("0123456789");
+		Cursor c = t.cursor(3);
+		char[] chars = new char[8];
+		assertEquals(4, c.read(chars, 1, 4));
+		assertEquals("3456", new String(chars, 1, 4));
+		assertEquals('7', c.next());
+		assertEquals(2, c.read(chars, 0, 8));
+		assertEquals("89", new String(chars, 0, 2));
+		assertEquals(0, c.read(chars, 0, 8));
+		assertEquals('9', c.previous());
+	}
+
+	@Test
+	public void testSeekAfterEdits() {
+		EditTree t = new EditTree("0123456789");
+		Cursor c = t.cursor(5);
+		t.add("abcdefghijklmnopqrstuvwxyz", 5);
+		t.delete(0);
+		c.seek(4);
+		StringBuilder sb = new StringBuilder();
+		while (c.hasNext()) {
+			sb.append(c.next());
+		}
+		assertEquals("abcdefghijklmnopqrstuvwxyz56789", sb.toString());
+		assertTrue(c.hasPrevious());
+	}
+}
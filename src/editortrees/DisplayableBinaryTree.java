@@ -12,6 +12,8 @@ import java.awt.geom.Line2D;
 import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.IdentityHashMap;
+
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 
@@ -71,6 +73,9 @@ public class DisplayableBinaryTree extends JComponent {
 	private double nodeY;
 	private double angle;
 	private boolean goingCrazy;
+	// The drawing state of each node shown in the last paint. It is rebuilt on
+	// every paint, so nodes deleted from the tree don't linger here.
+	private final IdentityHashMap<Node, DisplayableNodeWrapper> wrappers = new IdentityHashMap<Node, DisplayableNodeWrapper>();
 
 	/**
 	 * Constructs a new displayable binary tree, set to default to the given window
@@ -203,13 +208,27 @@ public class DisplayableBinaryTree extends JComponent {
 		g2.fill(new Rectangle2D.Double(this.width - 20, 80, 40, 5));
 		g2.fill(new Rectangle2D.Double(this.width - 25, 90, 50, 5));
 		// // RAISE THE BAR ^^^^^
-		DisplayableNodeWrapper current = this.tree.root.displayableNodeWrapper;
+		this.wrappers.clear();
+		DisplayableNodeWrapper current = this.wrapperFor(this.tree.root);
 		// CURRENT.POINT = THE CENTER POINT, NOT THE UPPER LEFT CORNER
 		this.paintHelper(g2, current, this.nodeY);
 		this.lineHelper(g2, current);
 		// System.out.println("DONE");
 	}
 
+	/**
+	 * @param node
+	 * @return the displayable part of node, made the first time it is asked for
+	 */
+	DisplayableNodeWrapper wrapperFor(Node node) {
+		DisplayableNodeWrapper wrapper = this.wrappers.get(node);
+		if (wrapper == null) {
+			wrapper = new DisplayableNodeWrapper(node, this);
+			this.wrappers.put(node, wrapper);
+		}
+		return wrapper;
+	}
+
 	/**
 	 * helper method to paint nodes
 	 * 
@@ -22,18 +22,23 @@ public class DisplayableNodeWrapper {
 	private Point.Double point;
 	private double radius;
 	private Node node;
+	private DisplayableBinaryTree display;
 
 	// ******************************************************************************
 
 	/**
-	 * only sets the graphical related fields
+	 * only sets the graphical related fields. Wrappers are made by the display
+	 * when it lays the tree out, so nodes don't carry one.
 	 * 
 	 * @param node
+	 * @param display the display that owns this wrapper and those of its
+	 *                neighbors
 	 */
-	public DisplayableNodeWrapper(Node node) {
+	public DisplayableNodeWrapper(Node node, DisplayableBinaryTree display) {
 		this.point = null;
 		this.radius = -10;
 		this.node = node;
+		this.display = display;
 	}
 
 	/**
@@ -42,7 +47,7 @@ public class DisplayableNodeWrapper {
 	 */
 	public DisplayableNodeWrapper getLeft() {
 		if (this.node.left != Node.NULL_NODE) {
-			return this.node.left.displayableNodeWrapper;
+			return this.display.wrapperFor(this.node.left);
 		}
 		return null;
 	}
@@ -53,7 +58,7 @@ public class DisplayableNodeWrapper {
 	 */
 	public DisplayableNodeWrapper getRight() {
 		if (this.node.right != Node.NULL_NODE) {
-			return this.node.right.displayableNodeWrapper;
+			return this.display.wrapperFor(this.node.right);
 		}
 		return null;
 	}
@@ -63,7 +68,7 @@ public class DisplayableNodeWrapper {
 	 * @return
 	 */
 	public DisplayableNodeWrapper getParent() {
-		return this.node.getParent().displayableNodeWrapper;
+		return this.display.wrapperFor(this.node.getParent());
 	}
 	
 	public Node getNode() {
@@ -0,0 +1,64 @@
+package editortrees;
+
+/**
+ * One edit of a batch for EditTree.applyBatch(): an insertion of some text,
+ * or a deletion of a range. Positions are offsets in the document as it was
+ * before the batch, the way a patch or diff gives them, so the edits of one
+ * batch don't shift each other.
+ */
+public final class Edit {
+
+	final boolean insert;
+	final int pos;
+	final String text; // inserted text, empty for a delete
+	final int length; // number of characters inserted or deleted
+
+	private Edit(boolean insert, int pos, String text, int length) {
+		this.insert = insert;
+		this.pos = pos;
+		this.text = text;
+		this.length = length;
+	}
+
+	/**
+	 * @return an edit inserting text before the character that was at pos
+	 */
+	public static Edit insert(int pos, CharSequence text) {
+		String s = text.toString();
+		return new Edit(true, pos, s, s.length());
+	}
+
+	/**
+	 * @return an edit deleting the length characters that started at pos
+	 */
+	public static Edit delete(int pos, int length) {
+		return new Edit(false, pos, "", length);
+	}
+
+	/**
+	 * @return true iff this edit changes the text before position at, or
+	 *         inserts right before it
+	 */
+	boolean before(int at) {
+		return this.insert ? this.pos <= at : this.pos < at;
+	}
+
+	/**
+	 * @return true iff this edit changes the text after position at
+	 */
+	boolean after(int at) {
+		return this.insert ? this.pos > at : this.pos + this.length > at + 1;
+	}
+
+	/**
+	 * @return true iff this edit deletes the character at position at
+	 */
+	boolean covers(int at) {
+		return !this.insert && this.pos <= at && at < this.pos + this.length;
+	}
+
+	@Override
+	public String toString() {
+		return this.insert ? "insert " + this.pos + " \"" + this.text + "\"" : "delete " + this.pos + " " + this.length;
+	}
+}
@@ -0,0 +1,301 @@
+package editortrees;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo/redo for an EditTree. Edits made through this class are applied to the
+ * tree and recorded as the text they inserted or removed, which is all that is
+ * needed to invert them, instead of a full copy of the document per
+ * checkpoint. Consecutive keystrokes (typing forward, backspacing, or
+ * forward-deleting at one spot) are coalesced into a single undo step, and
+ * beginGroup()/endGroup() let a caller make any sequence of edits one step.
+ *
+ * Undoing or redoing a step costs O(log n + k) for k characters, using the
+ * bulk add and range delete. The history is kept under a memory budget by
+ * forgetting the oldest undo steps first.
+ */
+public class EditHistory {
+
+	public static final long DEFAULT_MEMORY_BUDGET = 16L * 1024 * 1024;
+
+	// Rough heap cost of one recorded change apart from its characters.
+	private static final int CHANGE_OVERHEAD = 48;
+
+	private final EditTree tree;
+	private final long memoryBudget;
+	private final Deque<List<Change>> undo = new ArrayDeque<List<Change>>();
+	private final Deque<List<Change>> redo = new ArrayDeque<List<Change>>();
+	private long memoryUsed = 0;
+	private int groupDepth = 0;
+	private boolean coalescing = false;
+
+	/**
+	 * An insertion (or deletion) of text at pos.
+	 */
+	static class Change {
+		final boolean insert;
+		int pos;
+		final StringBuilder text;
+
+		Change(boolean insert, int pos, CharSequence text) {
+			this.insert = insert;
+			this.pos = pos;
+			this.text = new StringBuilder(text);
+		}
+
+		void apply(EditTree tree, boolean forward) {
+			if(this.insert == forward) {
+				tree.add(this.text, this.pos);
+			}
+			else {
+				tree.delete(this.pos, this.text.length());
+			}
+		}
+	}
+
+	public EditHistory(EditTree tree) {
+		this(tree, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * @param tree         the tree to edit
+	 * @param memoryBudget approximate number of bytes the recorded history may
+	 *                     use before the oldest undo steps are dropped
+	 */
+	public EditHistory(EditTree tree, long memoryBudget) {
+		if(memoryBudget < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.tree = tree;
+		this.memoryBudget = memoryBudget;
+	}
+
+	public EditTree getTree() {
+		return this.tree;
+	}
+
+	/**
+	 * Adds ch at pos. Typing at the end of the text added by the previous
+	 * keystroke extends the same undo step.
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+		this.tree.add(ch, pos);
+		Change last = coalescable();
+		if(last != null && last.insert && pos == last.pos + last.text.length()) {
+			last.text.append(ch);
+			charge(2);
+		}
+		else {
+			record(new Change(true, pos, String.valueOf(ch)));
+		}
+		this.coalescing = true;
+	}
+
+	public void add(CharSequence s, int pos) throws IndexOutOfBoundsException {
+		this.tree.add(s, pos);
+		if(s.length() > 0) {
+			record(new Change(true, pos, s.toString()));
+		}
+		this.coalescing = false;
+	}
+
+	/**
+	 * Deletes the character at pos. Repeated backspaces or forward deletes at
+	 * one spot extend the same undo step.
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos >= this.tree.size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		char ch = this.tree.delete(pos);
+		Change last = coalescable();
+		if(last != null && !last.insert && pos == last.pos) {
+			last.text.append(ch);
+			charge(2);
+		}
+		else if(last != null && !last.insert && pos == last.pos - 1) {
+			last.text.insert(0, ch);
+			last.pos = pos;
+			charge(2);
+		}
+		else {
+			record(new Change(false, pos, String.valueOf(ch)));
+		}
+		this.coalescing = true;
+		return ch;
+	}
+
+	public String delete(int pos, int length) throws IndexOutOfBoundsException {
+		String removed = this.tree.delete(pos, length).toString();
+		if(length > 0) {
+			record(new Change(false, pos, removed));
+		}
+		this.coalescing = false;
+		return removed;
+	}
+
+	/**
+	 * Starts a compound edit: everything up to the matching endGroup() is
+	 * undone and redone as one step. Groups may nest.
+	 */
+	public void beginGroup() {
+		if(this.groupDepth++ == 0) {
+			clearRedo();
+			this.undo.addLast(new ArrayList<Change>());
+			this.coalescing = false;
+			trim();
+		}
+	}
+
+	public void endGroup() {
+		if(this.groupDepth == 0) {
+			throw new IllegalStateException();
+		}
+		if(--this.groupDepth == 0) {
+			if(this.undo.peekLast().isEmpty()) {
+				this.undo.removeLast();
+			}
+			this.coalescing = false;
+		}
+	}
+
+	/**
+	 * Ends the current run of coalesced keystrokes, so the next edit starts a
+	 * new undo step.
+	 */
+	public void breakCoalescing() {
+		this.coalescing = false;
+	}
+
+	public boolean canUndo() {
+		return this.groupDepth == 0 && !this.undo.isEmpty();
+	}
+
+	public boolean canRedo() {
+		return this.groupDepth == 0 && !this.redo.isEmpty();
+	}
+
+	public int undoDepth() {
+		return this.undo.size();
+	}
+
+	public int redoDepth() {
+		return this.redo.size();
+	}
+
+	public boolean undo() {
+		return undo(1) == 1;
+	}
+
+	/**
+	 * Undoes up to steps steps, newest first.
+	 *
+	 * @return the number of steps actually undone
+	 */
+	public int undo(int steps) {
+		if(this.groupDepth > 0) {
+			throw new IllegalStateException();
+		}
+		int done = 0;
+		while(done < steps && !this.undo.isEmpty()) {
+			List<Change> group = this.undo.removeLast();
+			for(int i = group.size() - 1; i >= 0; i--) {
+				group.get(i).apply(this.tree, false);
+			}
+			this.redo.addLast(group);
+			done++;
+		}
+		this.coalescing = false;
+		return done;
+	}
+
+	public boolean redo() {
+		return redo(1) == 1;
+	}
+
+	/**
+	 * Redoes up to steps previously undone steps, oldest first.
+	 *
+	 * @return the number of steps actually redone
+	 */
+	public int redo(int steps) {
+		if(this.groupDepth > 0) {
+			throw new IllegalStateException();
+		}
+		int done = 0;
+		while(done < steps && !this.redo.isEmpty()) {
+			List<Change> group = this.redo.removeLast();
+			for(Change change : group) {
+				change.apply(this.tree, true);
+			}
+			this.undo.addLast(group);
+			done++;
+		}
+		this.coalescing = false;
+		return done;
+	}
+
+	/**
+	 * @return approximate bytes used by the recorded history
+	 */
+	public long memoryUsed() {
+		return this.memoryUsed;
+	}
+
+	/**
+	 * @return the change the next keystroke may be merged into, or null
+	 */
+	private Change coalescable() {
+		if(!this.coalescing || this.groupDepth > 0 || this.undo.isEmpty()) {
+			return null;
+		}
+		List<Change> group = this.undo.peekLast();
+		return group.size() == 1 ? group.get(0) : null;
+	}
+
+	private void record(Change change) {
+		if(this.groupDepth > 0) {
+			this.undo.peekLast().add(change);
+		}
+		else {
+			clearRedo();
+			List<Change> group = new ArrayList<Change>(1);
+			group.add(change);
+			this.undo.addLast(group);
+		}
+		charge(CHANGE_OVERHEAD + 2L * change.text.length());
+	}
+
+	private void charge(long bytes) {
+		this.memoryUsed += bytes;
+		trim();
+	}
+
+	/**
+	 * Drops the oldest steps until the history fits the budget again. The
+	 * newest step, which may still be growing, is never dropped.
+	 */
+	private void trim() {
+		while(this.memoryUsed > this.memoryBudget && this.undo.size() > 1) {
+			this.memoryUsed -= cost(this.undo.removeFirst());
+		}
+	}
+
+	private void clearRedo() {
+		for(List<Change> group : this.redo) {
+			this.memoryUsed -= cost(group);
+		}
+		this.redo.clear();
+	}
+
+	private static long cost(List<Change> group) {
+		long bytes = 0;
+		for(Change change : group) {
+			bytes += CHANGE_OVERHEAD + 2L * change.text.length();
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,122 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditHistory}
+ */
+public class EditHistoryTest {
+
+	private static void type(EditHistory history, String s, int pos) {
+		for (int i = 0; i < s.length(); i++) {
+			history.add(s.charAt(i), pos + i);
+		}
+	}
+
+	@Test
+	public void testTypingIsOneStep() {
+		EditHistory history = new EditHistory(new EditTree());
+		type(history, "hello", 0);
+		assertEquals(1, history.undoDepth());
+		history.breakCoalescing();
+		type(history, " world", 5);
+		assertEquals(2, history.undoDepth());
+		assertTrue(history.undo());
+		assertEquals("hello", history.getTree().toString());
+		assertTrue(history.undo());
+		assertEquals("", history.getTree().toString());
+		assertFalse(history.undo());
+		assertEquals(2, history.redo(5));
+		assertEquals("hello world", history.getTree().toString());
+	}
+
+	@Test
+	public void testNonContiguousTypingStartsNewStep() {
+		EditHistory history = new EditHistory(new EditTree("abc"));
+		history.add('x', 3);
+		history.add('y', 0);
+		assertEquals("yabcx", history.getTree().toString());
+		assertEquals(2, history.undoDepth());
+		history.undo();
+		assertEquals("abcx", history.getTree().toString());
+	}
+
+	@Test
+	public void testBackspaceAndForwardDeleteCoalesce() {
+		EditHistory history = new EditHistory(new EditTree("0123456789"));
+		history.delete(9);
+		history.delete(8);
+		history.delete(7);
+		assertEquals(1, history.undoDepth());
+		history.breakCoalescing();
+		history.delete(0);
+		history.delete(0);
+		assertEquals(2, history.undoDepth());
+		assertEquals("23456", history.getTree().toString());
+		history.undo();
+		assertEquals("0123456", history.getTree().toString());
+		history.undo();
+		assertEquals("0123456789", history.getTree().toString());
+	}
+
+	@Test
+	public void testBulkEditsAndGroups() {
+		EditHistory history = new EditHistory(new EditTree("The quick brown fox"));
+		history.beginGroup();
+		assertEquals("quick ", history.delete(4, 6));
+		history.add("slow ", 4);
+		history.endGroup();
+		history.add("!", history.getTree().size());
+		assertEquals("The slow brown fox!", history.getTree().toString());
+		assertEquals(2, history.undoDepth());
+		history.undo();
+		assertEquals("The slow brown fox", history.getTree().toString());
+		history.undo();
+		assertEquals("The quick brown fox", history.getTree().toString());
+		history.redo();
+		assertEquals("The slow brown fox", history.getTree().toString());
+	}
+
+	@Test
+	public void testNewEditClearsRedo() {
+		EditHistory history = new EditHistory(new EditTree());
+		history.add("abc", 0);
+		history.add("def", 3);
+		history.undo();
+		assertTrue(history.canRedo());
+		history.add("xyz", 3);
+		assertFalse(history.canRedo());
+		assertEquals("abcxyz", history.getTree().toString());
+	}
+
+	@Test
+	public void testJumpManyStepsBack() {
+		EditHistory history = new EditHistory(new EditTree());
+		for (int i = 0; i < 1000; i++) {
+			history.add(Integer.toString(i % 10), i);
+		}
+		assertEquals(1000, history.undoDepth());
+		assertEquals(900, history.undo(900));
+		assertEquals("0123456789012345678901234567890123456789012345678901234567890123456789012345678901234567890123456789",
+				history.getTree().toString());
+		assertEquals(900, history.redo(900));
+		assertEquals(1000, history.getTree().size());
+	}
+
+	@Test
+	public void testMemoryBudgetEvictsOldestSteps() {
+		EditHistory history = new EditHistory(new EditTree(), 1000);
+		for (int i = 0; i < 100; i++) {
+			history.add("0123456789", 0);
+		}
+		assertTrue(history.memoryUsed() <= 1000);
+		assertTrue(history.undoDepth() < 100);
+		int depth = history.undoDepth();
+		assertEquals(depth, history.undo(100));
+		assertEquals((100 - depth) * 10, history.getTree().size());
+	}
+}
@@ -0,0 +1,428 @@
+package editortrees;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Makes the edits to an EditTree durable. Every edit made through this class
+ * is applied to the tree and appended to a write-ahead log as a small binary
+ * record; commit() writes the records made since the last commit with one
+ * sequential write and one FileChannel.force(), so an editor can commit once
+ * per keystroke burst or per batch instead of saving the whole document.
+ * checkpoint() saves the tree to a CheckpointFile, which writes only the
+ * nodes changed since the last checkpoint, and starts the log over. After a
+ * crash, open() loads the last checkpoint and replays the log on top of it,
+ * up to the last record that was completely written.
+ *
+ * The log is a header (magic "EDLG", a version byte, and the sequence number
+ * of the checkpoint it follows) and then records, each one the length of its
+ * body, the body, and a CRC32 of the body. A new log is only started once its
+ * checkpoint is committed, so a log left over from before a checkpoint is
+ * recognized by its older sequence number and ignored.
+ *
+ * Edits replay through the same EditTree methods that made them, so the
+ * recovered tree has the same shape and rotation count as the original.
+ */
+public class EditLog implements Closeable {
+
+	static final int MAGIC = ('E' << 24) | ('D' << 16) | ('L' << 8) | 'G';
+	static final byte VERSION = 1;
+	private static final int HEADER = 4 + 1 + 8;
+	// Uncommitted records are written out, without forcing, past this size.
+	private static final int PENDING = 1 << 20;
+
+	private static final byte ADD_CHAR = 1;
+	private static final byte ADD = 2;
+	private static final byte DELETE_CHAR = 3;
+	private static final byte DELETE = 4;
+	private static final byte BATCH = 5;
+
+	private final EditTree tree;
+	private final CheckpointFile checkpoints;
+	private final FileChannel log;
+	private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+	private final CRC32 crc = new CRC32();
+
+	private EditLog(CheckpointFile checkpoints, FileChannel log) {
+		this.tree = checkpoints.getTree();
+		this.checkpoints = checkpoints;
+		this.log = log;
+	}
+
+	/**
+	 * Recovers the document from checkpoint and log, which need not exist
+	 * yet, and keeps logging to log. A record cut short by a crash, and
+	 * anything after it, is dropped from the log.
+	 *
+	 * @return the log, with the recovered document as its tree
+	 * @throws IOException if either file can't be read or written, or a
+	 *                     complete record in the log can't be applied
+	 */
+	public static EditLog open(File checkpoint, File log) throws IOException {
+		CheckpointFile checkpoints;
+		if(checkpoint.exists()) {
+			checkpoints = CheckpointFile.open(checkpoint);
+		}
+		else {
+			checkpoints = CheckpointFile.create(checkpoint, new EditTree());
+		}
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(log.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE);
+		}
+		catch(IOException e) {
+			checkpoints.close();
+			throw e;
+		}
+		try {
+			EditLog editLog = new EditLog(checkpoints, channel);
+			long end = editLog.replay();
+			if(end < 0) {
+				editLog.startLog();
+			}
+			else {
+				channel.truncate(end);
+				channel.position(end);
+			}
+			return editLog;
+		}
+		catch(IOException e) {
+			channel.close();
+			checkpoints.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * The tree holding the document. Read it freely, but edit it only through
+	 * this log, or the edits won't be recovered.
+	 */
+	public EditTree getTree() {
+		return this.tree;
+	}
+
+	// Each edit is logged before it is applied, and the record of an edit the
+	// tree rejects is taken back. Writing out uncommitted records when there
+	// are too many can fail with an UncheckedIOException, which leaves the
+	// tree as it was.
+
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+		int start = begin(ADD_CHAR, 4 + 2);
+		this.pending.putInt(pos);
+		this.pending.putChar(ch);
+		end(start);
+		try {
+			this.tree.add(ch, pos);
+		}
+		catch(RuntimeException e) {
+			this.pending.position(start);
+			throw e;
+		}
+	}
+
+	public void add(CharSequence s, int pos) throws IndexOutOfBoundsException {
+		int start = begin(ADD, 4 + 4 + 2 * s.length());
+		putText(pos, s);
+		end(start);
+		try {
+			this.tree.add(s, pos);
+		}
+		catch(RuntimeException e) {
+			this.pending.position(start);
+			throw e;
+		}
+	}
+
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		int start = begin(DELETE_CHAR, 4);
+		this.pending.putInt(pos);
+		end(start);
+		try {
+			return this.tree.delete(pos);
+		}
+		catch(RuntimeException e) {
+			this.pending.position(start);
+			throw e;
+		}
+	}
+
+	public EditTree delete(int pos, int length) throws IndexOutOfBoundsException {
+		int start = begin(DELETE, 4 + 4);
+		this.pending.putInt(pos);
+		this.pending.putInt(length);
+		end(start);
+		try {
+			return this.tree.delete(pos, length);
+		}
+		catch(RuntimeException e) {
+			this.pending.position(start);
+			throw e;
+		}
+	}
+
+	/**
+	 * Logs and applies edits as one record, so after a crash either all of
+	 * them are recovered or none are.
+	 */
+	public void applyBatch(List<Edit> edits) throws IndexOutOfBoundsException, IllegalArgumentException {
+		int bytes = 4;
+		for(Edit edit : edits) {
+			bytes += 1 + 4 + 4 + (edit.insert ? 2 * edit.length : 0);
+		}
+		int start = begin(BATCH, bytes);
+		this.pending.putInt(edits.size());
+		for(Edit edit : edits) {
+			if(edit.insert) {
+				this.pending.put(ADD);
+				putText(edit.pos, edit.text);
+			}
+			else {
+				this.pending.put(DELETE);
+				this.pending.putInt(edit.pos);
+				this.pending.putInt(edit.length);
+			}
+		}
+		end(start);
+		try {
+			// Checks every edit before it changes anything.
+			this.tree.applyBatch(edits);
+		}
+		catch(RuntimeException e) {
+			this.pending.position(start);
+			throw e;
+		}
+	}
+
+	/**
+	 * Makes every edit so far durable, with one write of the records made
+	 * since the last commit and one force of the log.
+	 */
+	public void commit() throws IOException {
+		write();
+		this.log.force(false);
+	}
+
+	/**
+	 * Saves the tree as the new checkpoint and starts an empty log after it.
+	 * Only the nodes changed since the last checkpoint are written, so this
+	 * costs about as much as the edits it saves; see CheckpointFile.
+	 */
+	public void checkpoint() throws IOException {
+		commit();
+		this.checkpoints.checkpoint();
+		startLog();
+	}
+
+	/**
+	 * @return the size of the log, counting records not yet committed
+	 */
+	public long logSize() throws IOException {
+		return this.log.position() + this.pending.position();
+	}
+
+	/**
+	 * Commits, and closes the log and the checkpoint file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			commit();
+		}
+		finally {
+			this.log.close();
+			this.checkpoints.close();
+		}
+	}
+
+	/**
+	 * Empties the log and writes a header for the last checkpoint.
+	 */
+	private void startLog() throws IOException {
+		this.pending.clear();
+		this.pending.putInt(MAGIC);
+		this.pending.put(VERSION);
+		this.pending.putLong(this.checkpoints.sequence());
+		this.log.truncate(0);
+		this.log.position(0);
+		commit();
+	}
+
+	/**
+	 * Applies the log's complete records to the tree.
+	 *
+	 * @return the position just past the last complete record, or -1 if the
+	 *         log is empty or belongs to an older checkpoint
+	 */
+	private long replay() throws IOException {
+		this.log.position(0);
+		long size = this.log.size();
+		if(size < HEADER) {
+			return -1;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.log), 1 << 16));
+		if(in.readInt() != MAGIC) {
+			throw new IOException("not an EditLog");
+		}
+		byte version = in.readByte();
+		if(version != VERSION) {
+			throw new IOException("unknown EditLog version " + version);
+		}
+		long sequence = in.readLong();
+		if(sequence < this.checkpoints.sequence()) {
+			return -1;
+		}
+		if(sequence > this.checkpoints.sequence()) {
+			throw new IOException("EditLog is newer than its checkpoint");
+		}
+		long end = HEADER;
+		while(size - end >= 8) {
+			int length = in.readInt();
+			if(length <= 0 || length > size - end - 8) {
+				break;
+			}
+			byte[] body = new byte[length];
+			in.readFully(body);
+			int expected = in.readInt();
+			this.crc.reset();
+			this.crc.update(body, 0, length);
+			if(expected != (int) this.crc.getValue()) {
+				break;
+			}
+			try {
+				apply(ByteBuffer.wrap(body));
+			}
+			catch(RuntimeException e) {
+				throw new IOException("EditLog record at " + end + " can't be applied", e);
+			}
+			end += 4 + length + 4;
+		}
+		return end;
+	}
+
+	private void apply(ByteBuffer body) {
+		byte type = body.get();
+		switch(type) {
+		case ADD_CHAR:
+			int pos = body.getInt();
+			this.tree.add(body.getChar(), pos);
+			break;
+		case ADD:
+			pos = body.getInt();
+			this.tree.add(getText(body), pos);
+			break;
+		case DELETE_CHAR:
+			this.tree.delete(body.getInt());
+			break;
+		case DELETE:
+			pos = body.getInt();
+			this.tree.delete(pos, body.getInt());
+			break;
+		case BATCH:
+			int count = body.getInt();
+			List<Edit> edits = new ArrayList<Edit>(count);
+			for(int i = 0; i < count; i++) {
+				if(body.get() == ADD) {
+					pos = body.getInt();
+					edits.add(Edit.insert(pos, getText(body)));
+				}
+				else {
+					pos = body.getInt();
+					edits.add(Edit.delete(pos, body.getInt()));
+				}
+			}
+			this.tree.applyBatch(edits);
+			break;
+		default:
+			throw new IllegalStateException("unknown record type " + type);
+		}
+	}
+
+	private static String getText(ByteBuffer body) {
+		char[] chars = new char[body.getInt()];
+		body.asCharBuffer().get(chars);
+		body.position(body.position() + 2 * chars.length);
+		return new String(chars);
+	}
+
+	private void putText(int pos, CharSequence s) {
+		this.pending.putInt(pos);
+		this.pending.putInt(s.length());
+		for(int i = 0; i < s.length(); i++) {
+			this.pending.putChar(s.charAt(i));
+		}
+	}
+
+	/**
+	 * Starts a record of type whose body has bytes more bytes after the type,
+	 * making room for all of it.
+	 *
+	 * @return where the record starts in pending
+	 */
+	private int begin(byte type, int bytes) {
+		int needed = 4 + 1 + bytes + 4;
+		if(this.pending.remaining() < needed) {
+			if(this.pending.position() > 0 && this.pending.position() + needed > PENDING) {
+				try {
+					write();
+				}
+				catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			if(this.pending.remaining() < needed) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(2 * this.pending.capacity(),
+						this.pending.position() + needed));
+				this.pending.flip();
+				bigger.put(this.pending);
+				this.pending = bigger;
+			}
+		}
+		int start = this.pending.position();
+		this.pending.putInt(0);
+		this.pending.put(type);
+		return start;
+	}
+
+	/**
+	 * Fills in the length and checksum of the record that starts at start.
+	 */
+	private void end(int start) {
+		int length = this.pending.position() - start - 4;
+		this.pending.putInt(start, length);
+		this.crc.reset();
+		this.crc.update(this.pending.array(), start + 4, length);
+		this.pending.putInt((int) this.crc.getValue());
+	}
+
+	/**
+	 * Writes out the records made since the last write, without forcing them.
+	 * If that fails part way, pending keeps just the bytes not yet written,
+	 * so the next write picks up where this one stopped.
+	 */
+	private void write() throws IOException {
+		ByteBuffer bytes = this.pending.duplicate();
+		bytes.flip();
+		try {
+			while(bytes.hasRemaining()) {
+				this.log.write(bytes);
+			}
+		}
+		finally {
+			this.pending.flip();
+			this.pending.position(bytes.position());
+			this.pending.compact();
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package editortrees;
+
+import static editortrees.TreeTestHelper.assertSameTree;
+import static editortrees.TreeTestHelper.copyOf;
+import static editortrees.TreeTestHelper.randomEdit;
+import static editortrees.TreeTestHelper.tempFiles;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditLog}
+ */
+public class EditLogTest {
+
+	private static File[] files() throws IOException {
+		return tempFiles("document.tree", "document.log");
+	}
+
+	private static void edit(EditLog log, Random random, int count) {
+		for (int i = 0; i < count; i++) {
+			Edit edit = randomEdit(random, log.getTree().size());
+			if (edit.insert) {
+				if (edit.length == 1) {
+					log.add(edit.text.charAt(0), edit.pos);
+				} else {
+					log.add(edit.text, edit.pos);
+				}
+			} else if (edit.length == 1) {
+				log.delete(edit.pos);
+			} else {
+				log.delete(edit.pos, edit.length);
+			}
+		}
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		File[] files = files();
+		EditLog log = EditLog.open(files[0], files[1]);
+		assertEquals("", log.getTree().toString());
+		edit(log, new Random(24), 2000);
+		List<Edit> batch = new ArrayList<Edit>();
+		batch.add(Edit.insert(0, "first"));
+		batch.add(Edit.delete(3, 4));
+		log.applyBatch(batch);
+		EditTree expected = copyOf(log.getTree());
+		log.close();
+		EditLog reopened = EditLog.open(files[0], files[1]);
+		assertSameTree(expected, reopened.getTree());
+		reopened.close();
+	}
+
+	@Test
+	public void testUncommittedEditsAreLost() throws IOException {
+		File[] files = files();
+		EditLog log = EditLog.open(files[0], files[1]);
+		log.add("committed", 0);
+		log.commit();
+		log.add("lost", 0);
+		log.delete(0, 3);
+		EditLog recovered = EditLog.open(files[0], files[1]);
+		assertEquals("committed", recovered.getTree().toString());
+		recovered.close();
+	}
+
+	@Test
+	public void testRejectedEditsAreNotLogged() throws IOException {
+		File[] files = files();
+		EditLog log = EditLog.open(files[0], files[1]);
+		log.add("abc", 0);
+		long size = log.logSize();
+		try {
+			log.add('x', 4);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			log.delete(1, 5);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		List<Edit> batch = new ArrayList<Edit>();
+		batch.add(Edit.insert(0, "ok"));
+		batch.add(Edit.delete(2, 9));
+		try {
+			log.applyBatch(batch);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		assertEquals(size, log.logSize());
+		log.add('d', 3);
+		log.close();
+		EditLog reopened = EditLog.open(files[0], files[1]);
+		assertEquals("abcd", reopened.getTree().toString());
+		reopened.close();
+	}
+
+	@Test
+	public void testTornRecordIsDropped() throws IOException {
+		File[] files = files();
+		EditLog log = EditLog.open(files[0], files[1]);
+		log.add("abc", 0);
+		log.commit();
+		long good = log.logSize();
+		log.add("defghi", 3);
+		log.close();
+		RandomAccessFile file = new RandomAccessFile(files[1], "rw");
+		file.setLength(file.length() - 5);
+		file.close();
+		EditLog recovered = EditLog.open(files[0], files[1]);
+		assertEquals("abc", recovered.getTree().toString());
+		assertEquals(good, files[1].length());
+		recovered.add('d', 3);
+		recovered.close();
+
+		file = new RandomAccessFile(files[1], "rw");
+		file.seek(file.length() - 1);
+		int last = file.read();
+		file.seek(file.length() - 1);
+		file.write(last ^ 1);
+		file.close();
+		recovered = EditLog.open(files[0], files[1]);
+		assertEquals("abc", recovered.getTree().toString());
+		recovered.close();
+	}
+
+	@Test
+	public void testCheckpoint() throws IOException {
+		File[] files = files();
+		Random random = new Random(25);
+		EditLog log = EditLog.open(files[0], files[1]);
+		edit(log, random, 1000);
+		long before = log.logSize();
+		log.checkpoint();
+		assertTrue(log.logSize() < before);
+		edit(log, random, 500);
+		EditTree expected = copyOf(log.getTree());
+		log.close();
+		EditLog reopened = EditLog.open(files[0], files[1]);
+		assertSameTree(expected, reopened.getTree());
+		reopened.close();
+	}
+
+	@Test
+	public void testLogFromBeforeCheckpointIsIgnored() throws IOException {
+		File[] files = files();
+		File old = new File(files[1].getPath() + ".old");
+		old.deleteOnExit();
+		EditLog log = EditLog.open(files[0], files[1]);
+		log.add("hello", 0);
+		log.commit();
+		Files.copy(files[1].toPath(), old.toPath());
+		log.checkpoint();
+		log.close();
+		// As if the checkpoint was renamed into place but the old log wasn't
+		// emptied yet.
+		Files.move(old.toPath(), files[1].toPath(), StandardCopyOption.REPLACE_EXISTING);
+		EditLog recovered = EditLog.open(files[0], files[1]);
+		assertEquals("hello", recovered.getTree().toString());
+		recovered.add(" world", 5);
+		recovered.close();
+		recovered = EditLog.open(files[0], files[1]);
+		assertEquals("hello world", recovered.getTree().toString());
+		recovered.close();
+	}
+}
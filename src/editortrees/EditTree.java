@@ -1,5 +1,25 @@
 package editortrees;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import buildtree.BinaryTree.Node;
 import editortrees.Node.Code;
 
@@ -16,11 +36,15 @@ import editortrees.Node.Code;
  * 
  */
 public class EditTree {
+	// toCharArray() works on slices of about this many characters at a time.
+	static final int EXPORT_CHUNK = 1 << 16;
+	// writeTo() encodes this many characters at a time.
+	static final int WRITE_CHUNK = 1 << 16;
 	private DisplayableBinaryTree display;
 	Node root;
 	private int size = 0;
-	private int count = 0;
-	private Object Track;
+	private final Nodeinfo rotations = new Nodeinfo();
+	private final Path path = new Path();
 	/**
 	 * MILESTONE 1 Construct an empty tree
 	 */
@@ -35,6 +59,7 @@ public class EditTree {
 	 */
 	public EditTree(char ch) {
 		root = new Node(ch);
+		size = 1;
 	}
 
 	/**
@@ -56,25 +81,48 @@ public class EditTree {
 	}
 
 
+	/**
+	 * Copies e's subtree in pre-order. Nodes whose children still have to be
+	 * copied wait on an explicit stack next to their copies, so deep trees
+	 * don't use the call stack.
+	 */
 	private Node copyTree(Node e) {
-		
-		Node temp = new Node(e.data,e.rank,e.balance);
-		if(e.left == Node.NULL_NODE) {
-			temp.left = Node.NULL_NODE;
-		}
-		if(e.right == Node.NULL_NODE) {
-			temp.right = Node.NULL_NODE;
-		}
-		
-		if(e.hasLeft()) {
-			temp.left = copyTree(e.left);
-		}
-		if(e.hasRight()) {
-			temp.right = copyTree(e.right);
+		Node[] originals = new Node[e.height + 2];
+		Node[] copies = new Node[e.height + 2];
+		Node root = copyNode(e);
+		int depth = 0;
+		originals[depth] = e;
+		copies[depth] = root;
+		depth++;
+		while(depth > 0) {
+			depth--;
+			Node original = originals[depth];
+			Node copy = copies[depth];
+			if(original.hasRight()) {
+				copy.right = copyNode(original.right);
+				originals[depth] = original.right;
+				copies[depth] = copy.right;
+				depth++;
+			}
+			if(original.hasLeft()) {
+				copy.left = copyNode(original.left);
+				originals[depth] = original.left;
+				copies[depth] = copy.left;
+				depth++;
+			}
 		}
-
-		
-		
+		return root;
+	}
+	
+	private static Node copyNode(Node e) {
+		Node temp = new Node(e.data,e.rank,e.balance);
+		temp.height = e.height;
+		temp.leftsize = e.leftsize;
+		temp.rightsize = e.rightsize;
+		temp.newlines = e.newlines;
+		temp.hash = e.hash;
+		temp.left = Node.NULL_NODE;
+		temp.right = Node.NULL_NODE;
 		return temp;
 	}
 
@@ -90,7 +138,6 @@ public class EditTree {
 		if(s.length() > 0) {
 			root = root.stringToTree(0, s.length() - 1, s);
 			this.size = s.length();
-			this.count = 0;
 		}
 	}
 
@@ -99,8 +146,108 @@ public class EditTree {
 	 */
 	@Override
 	public String toString() {
-		StringBuilder string = new StringBuilder();
-		return root.toString(string).toString();
+		return new String(toCharArray());
+	}
+
+	/**
+	 * Encodes this tree's text onto channel, a chunk at a time, without
+	 * building a String of it. Characters are read in order with a Cursor
+	 * into a buffer of WRITE_CHUNK characters, and encoded into one direct
+	 * buffer that is written out whenever it fills up, so saving uses the
+	 * same small amount of memory however big the tree is, and the channel
+	 * doesn't have to copy the bytes into a direct buffer of its own.
+	 * Characters the charset can't encode are replaced, as in
+	 * String.getBytes(charset).
+	 * 
+	 * @param channel a blocking channel to write to
+	 * @param charset encoding to write the text in
+	 * @return the number of bytes written
+	 * @throws IOException if the channel can't be written to
+	 */
+	public long writeTo(WritableByteChannel channel, Charset charset) throws IOException {
+		CharsetEncoder encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = CharBuffer.allocate(WRITE_CHUNK);
+		ByteBuffer bytes = ByteBuffer.allocateDirect(4 * WRITE_CHUNK);
+		Cursor cursor = cursor();
+		long written = 0;
+		boolean end = false;
+		while(!end) {
+			int read = cursor.read(chars.array(), chars.position(), chars.remaining());
+			chars.position(chars.position() + read);
+			chars.flip();
+			end = !cursor.hasNext();
+			// A surrogate pair cut in two by the end of the chunk is left in
+			// chars, and compact() moves it to the front of the next one.
+			while(encoder.encode(chars, bytes, end).isOverflow()) {
+				written += drain(bytes, channel);
+			}
+			chars.compact();
+		}
+		while(encoder.flush(bytes).isOverflow()) {
+			written += drain(bytes, channel);
+		}
+		return written + drain(bytes, channel);
+	}
+
+	/**
+	 * Writes out everything in bytes and empties it for more.
+	 * 
+	 * @return the number of bytes written
+	 */
+	private static int drain(ByteBuffer bytes, WritableByteChannel channel) throws IOException {
+		bytes.flip();
+		int count = bytes.remaining();
+		while(bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+		return count;
+	}
+
+	/**
+	 * Saves this tree in the binary format described in TreeFormat: every
+	 * node's character, rank and balance code in pre-order, so that
+	 * readBinary() gives back a tree of exactly the same shape, with the same
+	 * rotation count, without rebalancing anything. Takes O(n) time and a
+	 * fixed-size buffer.
+	 * 
+	 * @param channel a blocking channel to write to
+	 * @throws IOException if the channel can't be written to
+	 */
+	public void writeBinary(WritableByteChannel channel) throws IOException {
+		TreeFormat.write(root, this.size, this.rotations.count, channel);
+	}
+
+	/**
+	 * Reads a tree saved by writeBinary() in O(n) time.
+	 * 
+	 * @param channel a blocking channel to read from
+	 * @return the saved tree
+	 * @throws IOException if the channel can't be read, or doesn't hold a
+	 *                     valid saved tree
+	 */
+	public static EditTree readBinary(ReadableByteChannel channel) throws IOException {
+		return TreeFormat.read(channel);
+	}
+
+	/**
+	 * Every subtree's size is known, so so is the slice of the result each
+	 * one fills. Big trees are split into subtrees of about
+	 * EXPORT_CHUNK characters that fill their slices in parallel on the
+	 * common ForkJoinPool; smaller ones are filled on this thread.
+	 * 
+	 * @return a new array holding this tree's characters in order
+	 */
+	public char[] toCharArray() {
+		char[] chars = new char[this.size];
+		if(this.size <= EXPORT_CHUNK) {
+			root.toChars(chars, 0);
+		}
+		else {
+			ForkJoinPool.commonPool().invoke(new Export(root, chars, 0));
+		}
+		return chars;
 	}
 
 	/**
@@ -147,10 +294,47 @@ public class EditTree {
 	 */
 	public void add(char ch, int pos) throws IndexOutOfBoundsException {
 		// You can use your O(1) size field/method to determine if the index is valid.
-		Nodeinfo count = new Nodeinfo();
-		root = root.add(ch, pos,count);
+		if(pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		root = root.add(ch, pos, this.rotations, this.path);
 		size++;
-		this.count += count.count;
+	}
+
+	/**
+	 * @param s characters to add to the end of this tree.
+	 */
+	public void add(CharSequence s) {
+		add(s, size);
+	}
+
+	/**
+	 * Inserts all of s so that its first character ends up at position pos.
+	 * The new characters are built into a balanced subtree in O(k) time, the
+	 * same way the String constructor does it, and then spliced in with split
+	 * and join, so inserting k characters is O(k + log n) rather than k
+	 * separate O(log n) adds.
+	 * 
+	 * @param s   characters to add
+	 * @param pos position the first character of s will have. Valid positions
+	 *            range from 0 to the size of the tree, inclusive.
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public void add(CharSequence s, int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		int length = s.length();
+		if(length == 0) {
+			return;
+		}
+		Node middle = Node.NULL_NODE.stringToTree(0, length - 1, s);
+		Split parts = root.split(pos, this.size, this.rotations);
+		Node front = Node.concatenate(parts.left, pos, middle, length, this.rotations);
+		root = Node.concatenate(front, pos + length, parts.right, this.size - pos, this.rotations);
+		this.size += length;
+		this.path.forget();
 	}
 
 	/**
@@ -187,7 +371,13 @@ public class EditTree {
 	 *                                   field/method to determine this.
 	 */
 	public char get(int pos) throws IndexOutOfBoundsException {
-		return root.get(pos); // replace by a real O(log n) calculation.
+		// Start from the last edit's path, which is usually close by, but
+		// leave it alone so that concurrent readers don't disturb each other.
+		int i = this.path.find(pos, false);
+		if(i < 0) {
+			return root.get(pos);
+		}
+		return this.path.nodes[i].get(pos - this.path.starts[i]);
 	}
 
 	// MILESTONE 1: They next two "slow" methods are useful for testing, debugging 
@@ -269,15 +459,153 @@ public class EditTree {
 	 */
 	public int totalRotationCount() {
 // replace by a real calculation.
-		return count;
+		return this.rotations.count;
 
 	}
 
+	void setRotationCount(int count) {
+		this.rotations.count = count;
+	}
 
-	class Nodeinfo{
+
+	/**
+	 * The running count of rotations, which the Node methods add to. Each tree
+	 * keeps one for its whole life, so edits don't allocate a counter.
+	 */
+	static class Nodeinfo{
 		int count = 0;
 	}
 	
+	/**
+	 * The nodes add() and delete() passed on the way down, and which way they
+	 * went at each, so the ranks and balance can be fixed on the way back up
+	 * without recursion. Each tree keeps one and reuses it for every edit. An
+	 * AVL tree is at most about 1.44 log n tall, so it is only ever grown for
+	 * trees too big to fit in memory.
+	 * 
+	 * The path also serves as a finger for the next edit: the first valid
+	 * nodes are still on the way down from the root after the edit, and starts
+	 * holds the position of the first character of each of their subtrees.
+	 * Typing, for example, edits positions next to each other, so the next
+	 * search can start from the deepest of those nodes whose subtree holds its
+	 * position instead of from the root. Any edit that doesn't go through
+	 * add() or delete() changes the tree in other ways and must call forget().
+	 */
+	static class Path {
+		Node[] nodes = new Node[48];
+		boolean[] wentLeft = new boolean[48];
+		int[] starts = new int[48];
+		int depth = 0;
+		int valid = 0;
+		int start; // where the subtree resume() returned starts
+		
+		void push(Node node, boolean left, int start) {
+			if(this.depth == this.nodes.length) {
+				this.nodes = Arrays.copyOf(this.nodes, 2 * this.depth);
+				this.wentLeft = Arrays.copyOf(this.wentLeft, 2 * this.depth);
+				this.starts = Arrays.copyOf(this.starts, 2 * this.depth);
+			}
+			this.nodes[this.depth] = node;
+			this.wentLeft[this.depth] = left;
+			this.starts[this.depth] = start;
+			this.depth++;
+		}
+		
+		void forget() {
+			this.valid = 0;
+		}
+		
+		/**
+		 * Doesn't change anything, so any number of readers may call it at
+		 * once.
+		 * 
+		 * @param insert whether pos is a position to add at, which may be just
+		 *               past the end of a subtree
+		 * @return the index of the deepest valid node whose subtree holds pos,
+		 *         or -1 if there is none
+		 */
+		int find(int pos, boolean insert) {
+			for(int i = this.valid - 1; i >= 0; i--) {
+				Node node = this.nodes[i];
+				int offset = pos - this.starts[i];
+				if(offset >= 0 && offset <= node.rank + node.rightsize + (insert ? 1 : 0)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		/**
+		 * Cuts the path back to just above the deepest valid node whose
+		 * subtree holds pos, and sets start to where that subtree starts.
+		 * 
+		 * @return that node, for the search to continue from, or root
+		 */
+		Node resume(Node root, int pos, boolean insert) {
+			int i = find(pos, insert);
+			if(i < 0) {
+				this.depth = this.valid = 0;
+				this.start = 0;
+				return root;
+			}
+			this.depth = this.valid = i;
+			this.start = this.starts[i];
+			return this.nodes[i];
+		}
+	}
+	
+	/**
+	 * The sorted edits of one applyBatch() call, and the running state its
+	 * pass over the tree shares.
+	 */
+	static class Batch {
+		final Edit[] edits;
+		final Nodeinfo rotations;
+		int size; // new size of the subtree edited last
+		
+		Batch(Edit[] edits, Nodeinfo rotations) {
+			this.edits = edits;
+			this.rotations = rotations;
+		}
+	}
+	
+	/**
+	 * Fills the slice of a toCharArray() result that one subtree covers,
+	 * splitting it into tasks for its two subtrees while it is big.
+	 */
+	static class Export extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Node node;
+		private final char[] chars;
+		private final int offset;
+
+		Export(Node node, char[] chars, int offset) {
+			this.node = node;
+			this.chars = chars;
+			this.offset = offset;
+		}
+
+		@Override
+		protected void compute() {
+			if(this.node.rank + this.node.rightsize < EXPORT_CHUNK) {
+				this.node.toChars(this.chars, this.offset);
+				return;
+			}
+			this.chars[this.offset + this.node.rank] = this.node.data;
+			invokeAll(new Export(this.node.left, this.chars, this.offset),
+					new Export(this.node.right, this.chars, this.offset + this.node.rank + 1));
+		}
+	}
+	
+	static class Split {
+		Node left;
+		Node right;
+		public Split(Node left, Node right) {
+			this.left = left;
+			this.right = right;
+		}
+	}
+	
 	/**
 	 * MILESTONE 2 Returns true iff (read as "if and only if") for every node in the
 	 * tree, the node's balance code is correct based on its childrens' heights.
@@ -322,18 +650,173 @@ public class EditTree {
 		// node to be deleted with either its in-order successor or predecessor.
 		// The tests assume assume that you will replace it with the
 		// *successor*.
-		if(pos > this.size) {
+		if(pos < 0 || pos >= this.size) {
 			throw new IndexOutOfBoundsException();
 		}
-		char value = root.get(pos);
-		Nodeinfo count = new Nodeinfo();
-		count.count = 0;
+		char value = get(pos);
+		root = root.delete(pos, this.rotations, this.path);
 		this.size--;
-		root = root.delete(pos, count); // replace by a real calculation.
-		this.count = this.count + count.count;
 		return value;
 	}
 
+	/**
+	 * Removes the length characters starting at pos. The tree is split around
+	 * the range and the outer pieces are joined back together, so this does
+	 * O(log n) rebalancing work no matter how long the range is.
+	 * 
+	 * @param pos    position of the first character to delete
+	 * @param length number of characters to delete
+	 * @return a new tree holding the deleted characters, which reuses the
+	 *         deleted nodes
+	 * @throws IndexOutOfBoundsException unless pos..pos+length-1 are all
+	 *                                   legitimate indexes within this tree.
+	 */
+	public EditTree delete(int pos, int length) throws IndexOutOfBoundsException {
+		if(pos < 0 || length < 0 || pos + length > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		Split front = root.split(pos, this.size, this.rotations);
+		Split back = front.right.split(length, this.size - pos, this.rotations);
+		root = Node.concatenate(front.left, pos, back.right, this.size - pos - length, this.rotations);
+		this.size -= length;
+		this.path.forget();
+		return new EditTree(back.left, length);
+	}
+
+	/**
+	 * Applies a batch of edits in one pass over the tree, instead of
+	 * descending from the root (and rebalancing) once per edit. The positions
+	 * of all the edits refer to this tree as it was before the batch. Inserts
+	 * at the same position end up in the order they are listed. Deleted ranges
+	 * may not overlap each other, and nothing may be inserted strictly inside
+	 * a deleted range.
+	 * 
+	 * Only the nodes on the paths to the edits are visited, and each once, so
+	 * m edits cost O(m log(n/m + 1)) tree work plus the inserted text.
+	 * 
+	 * @param edits edits to apply, in any order
+	 * @throws IndexOutOfBoundsException if an edit reaches outside this tree
+	 * @throws IllegalArgumentException  if two edits overlap
+	 */
+	public void applyBatch(List<Edit> edits) throws IndexOutOfBoundsException, IllegalArgumentException {
+		List<Edit> kept = new ArrayList<Edit>(edits.size());
+		for(Edit edit : edits) {
+			if(edit.pos < 0 || edit.length < 0 || (edit.insert ? edit.pos : edit.pos + edit.length) > this.size) {
+				throw new IndexOutOfBoundsException(edit.toString());
+			}
+			if(edit.length > 0) {
+				kept.add(edit);
+			}
+		}
+		Edit[] sorted = kept.toArray(new Edit[kept.size()]);
+		// Stable, so inserts at one position stay in order; they go before a
+		// delete starting there, which gives the same text either way.
+		Arrays.sort(sorted, new Comparator<Edit>() {
+			@Override
+			public int compare(Edit a, Edit b) {
+				if(a.pos != b.pos) {
+					return a.pos < b.pos ? -1 : 1;
+				}
+				return a.insert == b.insert ? 0 : (a.insert ? -1 : 1);
+			}
+		});
+		int deletedFrom = 0;
+		int deletedTo = 0;
+		for(Edit edit : sorted) {
+			if(edit.insert ? edit.pos > deletedFrom && edit.pos < deletedTo : edit.pos < deletedTo) {
+				throw new IllegalArgumentException(edit.toString());
+			}
+			if(!edit.insert) {
+				deletedFrom = edit.pos;
+				deletedTo = edit.pos + edit.length;
+			}
+		}
+		Batch batch = new Batch(sorted, this.rotations);
+		root = root.applyEdits(this.size, 0, 0, sorted.length, batch);
+		this.size = batch.size;
+		this.path.forget();
+	}
+
+	/**
+	 * Cuts this tree in two at pos in O(log n) time. This tree keeps the
+	 * characters before pos; the characters from pos on are moved, in order,
+	 * into the returned tree.
+	 * 
+	 * @param pos position of the first character of the returned tree
+	 * @return a new tree holding this tree's characters from pos on
+	 * @throws IndexOutOfBoundsException if pos is negative or larger than the
+	 *                                   size of this tree.
+	 */
+	public EditTree split(int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		Split parts = root.split(pos, this.size, this.rotations);
+		EditTree rest = new EditTree(parts.right, this.size - pos);
+		root = parts.left;
+		this.size = pos;
+		this.path.forget();
+		return rest;
+	}
+
+	/**
+	 * Appends all of other's characters to the end of this tree in O(log n)
+	 * time by joining the two trees. Other's nodes are moved into this tree,
+	 * so other is left empty.
+	 * 
+	 * @param other tree to append
+	 * @throws IllegalArgumentException if other is this tree
+	 */
+	public void concatenate(EditTree other) throws IllegalArgumentException {
+		if(other == this) {
+			throw new IllegalArgumentException();
+		}
+		root = Node.concatenate(root, this.size, other.root, other.size, this.rotations);
+		this.size += other.size;
+		other.root = Node.NULL_NODE;
+		other.size = 0;
+		this.path.forget();
+		other.path.forget();
+	}
+
+	/**
+	 * Builds a tree holding the text of file in O(N) time, without reading the
+	 * file into a String first. The file is memory-mapped and decoded twice,
+	 * once to count its characters and once to build the tree bottom-up from
+	 * them, so apart from the tree itself only a small buffer is allocated.
+	 * The tree has the same shape the String constructor gives the same text.
+	 * 
+	 * @param file    file to load
+	 * @param charset encoding of the file; invalid bytes are replaced, as in
+	 *                new String(bytes, charset)
+	 * @return a new tree holding the file's characters
+	 * @throws IOException if the file can't be read, or holds more characters
+	 *                     than a tree can
+	 */
+	public static EditTree load(File file, Charset charset) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			MappedText text = new MappedText(channel, charset);
+			long size = text.count();
+			if(size > Integer.MAX_VALUE) {
+				throw new IOException(file + " has more than " + Integer.MAX_VALUE + " characters");
+			}
+			text.rewind();
+			return new EditTree(Node.buildTree((int) size, text), (int) size);
+		}
+		catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	EditTree(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
 	/**
 	 * MILESTONE 3 This method operates in O(length), where length is the
 	 * parameter provided. The way to do this is to recurse/iterate only
@@ -347,27 +830,203 @@ public class EditTree {
 	 *                                   legitimate indexes within this tree.
 	 */
 	public String get(int pos, int length) throws IndexOutOfBoundsException {
-		StringBuilder string = new StringBuilder();
-		Track track = new Track(length);
-		track.check = root.rank;
-		if(pos<0 || pos>=root.leftsize+root.rightsize+1 ||pos+length-1>=root.leftsize+root.rightsize+1|| root == Node.NULL_NODE ) {
+		if(pos<0 || length<0 || pos>=this.size ||pos+length-1>=this.size|| root == Node.NULL_NODE ) {
 			throw new IndexOutOfBoundsException();
 		}
-		return root.get(pos, pos+length-1,string,track,root.rank).toString(); // replace by a real calculation.
+		return root.get(pos, length, new StringBuilder(length)).toString();
 	}
 	
-	// Feel free to add whatever other methods and helpers you need,
-	// like for the graphical debugger.
-	public class Track {
-		int tracker;
-		boolean lOr = false;
-		int check = 0; 
-		public Track(int length) {
-			this.tracker = length;
+	/**
+	 * @return a cursor before the first character of this tree
+	 */
+	public Cursor cursor() {
+		return new Cursor(this, 0);
+	}
+
+	/**
+	 * O(log n). See {@link Cursor} for reading from there in O(1) amortized
+	 * per character.
+	 * 
+	 * @param pos from 0 to the size of the tree, inclusive
+	 * @return a cursor just before the character at pos
+	 * @throws IndexOutOfBoundsException if pos is negative or too big.
+	 */
+	public Cursor cursor(int pos) throws IndexOutOfBoundsException {
+		return new Cursor(this, pos);
+	}
+
+	/**
+	 * O(1). The view reads the tree in place, so, for example,
+	 * Pattern.matcher(tree.asCharSequence()) searches the text without first
+	 * copying all of it with toString(). The view must not be used after this
+	 * tree is edited; make a new one instead.
+	 * 
+	 * @return a CharSequence view of this tree's characters
+	 */
+	public CharSequence asCharSequence() {
+		return new TextView(this, 0, this.size);
+	}
+
+	/**
+	 * Each node keeps a polynomial hash of its subtree's text, modulo the prime
+	 * 2^61 - 1, so the hash of any range is put together from O(log n) of
+	 * them. Edits update the hashes on their path as they go, so this only
+	 * reads the tree and is as safe to call concurrently as get(). The base is
+	 * picked at random when the program starts, so hashes can be compared
+	 * within one run but should not be saved.
+	 * 
+	 * @param pos    position of the first character to hash
+	 * @param length number of characters to hash
+	 * @return the hash of the length characters starting at pos
+	 * @throws IndexOutOfBoundsException unless pos..pos+length-1 are all
+	 *                                   legitimate indexes within this tree.
+	 */
+	public long hash(int pos, int length) throws IndexOutOfBoundsException {
+		if(pos < 0 || length < 0 || pos + length > this.size) {
+			throw new IndexOutOfBoundsException();
 		}
-		
+		return length == 0 ? 0 : root.hash(pos, pos + length, 0);
 	}
-	
+
+	/**
+	 * Compares two ranges in O(log n) time by their hashes, instead of
+	 * building strings of them. Ranges that differ have the same hash with
+	 * probability at most about length / 2^61.
+	 * 
+	 * @param pos       position of the first character of the range in this
+	 *                  tree
+	 * @param other     tree holding the other range, which may be this tree
+	 * @param otherPos  position of the first character of the range in other
+	 * @param length    number of characters in each range
+	 * @return true iff the two ranges hold the same characters
+	 * @throws IndexOutOfBoundsException unless both ranges are within their
+	 *                                   trees.
+	 */
+	public boolean rangeEquals(int pos, EditTree other, int otherPos, int length)
+			throws IndexOutOfBoundsException {
+		return hash(pos, length) == other.hash(otherPos, length);
+	}
+
+	/**
+	 * @param pattern characters to look for
+	 * @return the position of the first occurrence of pattern, or -1 if there
+	 *         is none
+	 */
+	public int indexOf(CharSequence pattern) {
+		return indexOf(pattern, 0);
+	}
+
+	/**
+	 * Searches with Boyer-Moore-Horspool over a Cursor, so only a buffer as
+	 * long as pattern is allocated, not a copy of the tree. Takes the same
+	 * arguments and gives the same answers as String.indexOf().
+	 * 
+	 * @param pattern characters to look for
+	 * @param from    position to start looking at
+	 * @return the position of the first occurrence of pattern at or after
+	 *         from, or -1 if there is none
+	 */
+	public int indexOf(CharSequence pattern, int from) {
+		if(from < 0) {
+			from = 0;
+		}
+		if(from >= this.size || pattern.length() == 0) {
+			return pattern.length() == 0 ? Math.min(from, this.size) : -1;
+		}
+		return new Finder(this, pattern, true, from).find();
+	}
+
+	/**
+	 * @param pattern characters to look for
+	 * @return the position of the last occurrence of pattern, or -1 if there
+	 *         is none
+	 */
+	public int lastIndexOf(CharSequence pattern) {
+		return lastIndexOf(pattern, this.size);
+	}
+
+	/**
+	 * Searches backward the same way indexOf() searches forward. Takes the
+	 * same arguments and gives the same answers as String.lastIndexOf().
+	 * 
+	 * @param pattern characters to look for
+	 * @param from    last position an occurrence may start at
+	 * @return the position of the last occurrence of pattern at or before
+	 *         from, or -1 if there is none
+	 */
+	public int lastIndexOf(CharSequence pattern, int from) {
+		int length = pattern.length();
+		int last = Math.min(from, this.size - length);
+		if(last < 0) {
+			return -1;
+		}
+		if(length == 0) {
+			return last;
+		}
+		return new Finder(this, pattern, false, last + length).find();
+	}
+
+	/**
+	 * Finds the occurrences of pattern lazily, each one when it is asked for,
+	 * so stopping after the first few costs no more than those few searches.
+	 * Each occurrence starts after the end of the one before, the way
+	 * Matcher.find() works. Like a Cursor, the iterator must not be used
+	 * after this tree is edited.
+	 * 
+	 * @param pattern characters to look for
+	 * @return the positions of the occurrences, in order
+	 * @throws IllegalArgumentException if pattern is empty
+	 */
+	public PrimitiveIterator.OfInt findAll(CharSequence pattern) throws IllegalArgumentException {
+		if(pattern.length() == 0) {
+			throw new IllegalArgumentException();
+		}
+		return new Finder(this, pattern, true, 0);
+	}
+
+	/**
+	 * Lines are separated by '\n', so there is always one more line than
+	 * there are newlines, and an empty tree has one empty line. Each node keeps
+	 * the newline count of its subtree, so this is O(1).
+	 * 
+	 * @return the number of lines in this tree
+	 */
+	public int lineCount() {
+		return root.newlines + 1;
+	}
+
+	/**
+	 * O(log n), using the newline counts.
+	 * 
+	 * @param pos position in the tree, from 0 to the size of the tree,
+	 *            inclusive
+	 * @return the line, counting from 0, that pos is on
+	 * @throws IndexOutOfBoundsException if pos is negative or too big.
+	 */
+	public int lineOfOffset(int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return root.lineOfOffset(pos);
+	}
+
+	/**
+	 * O(log n), using the newline counts.
+	 * 
+	 * @param line line number, counting from 0
+	 * @return the position of the first character of that line (which is the
+	 *         position of its newline, or the size of the tree, if it is empty)
+	 * @throws IndexOutOfBoundsException unless 0 <= line < lineCount().
+	 */
+	public int offsetOfLine(int line) throws IndexOutOfBoundsException {
+		if(line < 0 || line >= lineCount()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return line == 0 ? 0 : root.offsetAfterNewline(line);
+	}
+
+	// Feel free to add whatever other methods and helpers you need,
+	// like for the graphical debugger.
 	public void show() {
 		if (this.display == null) {
 			this.display = new DisplayableBinaryTree(this, 960, 1080, true);
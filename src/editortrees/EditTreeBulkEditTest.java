@@ -0,0 +1,387 @@
+package editortrees;
+
+import static editortrees.TreeTestHelper.assertValid;
+import static editortrees.TreeTestHelper.maxHeight;
+import static editortrees.TreeTestHelper.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the split/join based bulk edits on {@link editortrees.EditTree}
+ */
+public class EditTreeBulkEditTest {
+
+	@Test
+	public void testAddStringToEmptyTree() {
+		EditTree t = new EditTree();
+		t.add("abcdefg", 0);
+		assertValid("abcdefg", t);
+		t = new EditTree();
+		t.add("");
+		assertValid("", t);
+	}
+
+	@Test
+	public void testAddStringAtEnds() {
+		EditTree t = new EditTree("middle");
+		t.add("start ", 0);
+		t.add(" end");
+		assertValid("start middle end", t);
+		t.add('!');
+		assertValid("start middle end!", t);
+	}
+
+	@Test
+	public void testAddStringInMiddle() {
+		EditTree t = new EditTree();
+		for (char c = 'a'; c <= 'z'; c++) {
+			t.add(c);
+		}
+		t.add("0123456789", 13);
+		assertValid("abcdefghijklm0123456789nopqrstuvwxyz", t);
+		assertEquals("m0123456789n", t.get(12, 12));
+	}
+
+	@Test
+	public void testAddStringRandom() {
+		Random random = new Random(230);
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			String s = randomString(random, random.nextInt(40));
+			int pos = random.nextInt(expected.length() + 1);
+			t.add(s, pos);
+			expected.insert(pos, s);
+		}
+		assertValid(expected.toString(), t);
+		// Single-character adds still work on a tree built by joins.
+		t.add('#', 17);
+		expected.insert(17, '#');
+		assertValid(expected.toString(), t);
+	}
+
+	@Test
+	public void testAddLargeStringIsFast() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		String big = sb.toString();
+		EditTree t = new EditTree("<>");
+		long start = System.currentTimeMillis();
+		t.add(big, 1);
+		t.add(big, 1);
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		assertEquals(2 * big.length() + 2, t.size());
+		assertEquals('<', t.get(0));
+		assertEquals('a', t.get(1));
+		assertEquals('>', t.get(t.size() - 1));
+		assertTrue(t.slowHeight() <= maxHeight(t.size()));
+	}
+
+	@Test
+	public void testDeleteRange() {
+		EditTree t = new EditTree("abcdefghijklmnopqrstuvwxyz");
+		EditTree removed = t.delete(3, 10);
+		assertValid("abcnopqrstuvwxyz", t);
+		assertValid("defghijklm", removed);
+		assertValid("", t.delete(5, 0));
+		assertValid("nopqrstuvwxyz", t.delete(3, t.size() - 3));
+		assertValid("abc", t);
+		assertValid("abc", t.delete(0, 3));
+		assertValid("", t);
+	}
+
+	@Test
+	public void testDeleteRangeRandom() {
+		Random random = new Random(17);
+		EditTree t = new EditTree(randomString(random, 20000));
+		StringBuilder expected = new StringBuilder(t.toString());
+		while (expected.length() > 0) {
+			int pos = random.nextInt(expected.length());
+			int length = random.nextInt(Math.min(500, expected.length() - pos) + 1);
+			EditTree removed = t.delete(pos, length);
+			assertEquals(expected.substring(pos, pos + length), removed.toString());
+			expected.delete(pos, pos + length);
+			if (random.nextInt(20) == 0) {
+				assertValid(expected.toString(), t);
+				assertValid(removed.toString(), removed);
+			}
+			if (random.nextInt(4) == 0) {
+				String s = randomString(random, random.nextInt(100));
+				int at = random.nextInt(expected.length() + 1);
+				t.add(s, at);
+				expected.insert(at, s);
+			}
+		}
+		assertValid(expected.toString(), t);
+	}
+
+	@Test
+	public void testDeleteLargeRangeIsFast() {
+		EditTree t = new EditTree(randomString(new Random(5), 1000000));
+		String expected = t.get(0, 10) + t.get(999990, 10);
+		long start = System.currentTimeMillis();
+		EditTree removed = t.delete(10, 999980);
+		assertTrue(System.currentTimeMillis() - start < 100);
+		assertEquals(expected, t.toString());
+		assertEquals(999980, removed.size());
+		assertTrue(removed.slowHeight() <= maxHeight(removed.size()));
+	}
+
+	@Test
+	public void testDeleteRangeThrowsIndexExceptions() {
+		EditTree t = new EditTree("abc");
+		try {
+			t.delete(1, 3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.delete(-1, 1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.delete(0, -1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		assertValid("abc", t);
+	}
+
+	@Test
+	public void testSplit() {
+		EditTree t = new EditTree("abcdefghijklmnopqrstuvwxyz");
+		EditTree rest = t.split(10);
+		assertValid("abcdefghij", t);
+		assertValid("klmnopqrstuvwxyz", rest);
+		assertValid("", t.split(10));
+		assertValid("abcdefghij", t.split(0));
+		assertValid("", t);
+	}
+
+	@Test
+	public void testConcatenate() {
+		EditTree t = new EditTree("abc");
+		EditTree other = new EditTree("defghijklmnopqrstuvwxyz");
+		t.concatenate(other);
+		assertValid("abcdefghijklmnopqrstuvwxyz", t);
+		assertValid("", other);
+		t.concatenate(other);
+		assertValid("abcdefghijklmnopqrstuvwxyz", t);
+		other.concatenate(t);
+		assertValid("abcdefghijklmnopqrstuvwxyz", other);
+		assertValid("", t);
+		try {
+			other.concatenate(other);
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testSingleEditsRandom() {
+		Random random = new Random(60);
+		EditTree t = new EditTree(randomString(random, 1000));
+		StringBuilder expected = new StringBuilder(t.toString());
+		for (int i = 0; i < 20000; i++) {
+			if (random.nextInt(5) < 2 && expected.length() > 0) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else {
+				int pos = random.nextInt(expected.length() + 1);
+				char ch = (char) ('a' + random.nextInt(26));
+				t.add(ch, pos);
+				expected.insert(pos, ch);
+			}
+			if (i % 1000 == 0) {
+				assertValid(expected.toString(), t);
+			}
+		}
+		assertValid(expected.toString(), t);
+		assertValid(expected.toString(), new EditTree(t));
+	}
+
+	@Test
+	public void testApplyBatch() {
+		EditTree t = new EditTree("The quick brown fox");
+		List<Edit> edits = new ArrayList<Edit>();
+		edits.add(Edit.insert(19, "!"));
+		edits.add(Edit.delete(4, 6));
+		edits.add(Edit.insert(4, "slow "));
+		edits.add(Edit.insert(0, ">"));
+		edits.add(Edit.insert(0, "> "));
+		edits.add(Edit.delete(16, 3));
+		edits.add(Edit.insert(16, "cat"));
+		t.applyBatch(edits);
+		assertValid(">> The slow brown cat!", t);
+		t.applyBatch(new ArrayList<Edit>());
+		assertValid(">> The slow brown cat!", t);
+		t.applyBatch(Arrays.asList(Edit.delete(0, t.size()), Edit.insert(t.size(), "x")));
+		assertValid("x", t);
+	}
+
+	@Test
+	public void testApplyBatchRandom() {
+		Random random = new Random(70);
+		EditTree t = new EditTree(randomString(random, 5000));
+		String text = t.toString();
+		for (int round = 0; round < 200; round++) {
+			// Pick non-overlapping edits left to right, building the expected
+			// text as we go, then hand them over shuffled.
+			List<Edit> edits = new ArrayList<Edit>();
+			StringBuilder expected = new StringBuilder();
+			int copied = 0;
+			int pos = 0;
+			while (true) {
+				pos += random.nextInt(round % 2 == 0 ? 300 : 30);
+				if (pos > text.length()) {
+					break;
+				}
+				expected.append(text, copied, pos);
+				if (random.nextBoolean() || pos == text.length()) {
+					String s = randomString(random, 1 + random.nextInt(round % 3 == 0 ? 50 : 3));
+					edits.add(Edit.insert(pos, s));
+					expected.append(s);
+					copied = pos;
+				} else {
+					int length = 1 + random.nextInt(Math.min(40, text.length() - pos));
+					edits.add(Edit.delete(pos, length));
+					pos += length;
+					copied = pos;
+				}
+			}
+			expected.append(text, copied, text.length());
+			String result = expected.toString();
+			Collections.shuffle(edits, random);
+			t.applyBatch(edits);
+			assertValid(result, t);
+			text = result;
+		}
+	}
+
+	@Test
+	public void testApplyBatchRejectsOverlaps() {
+		EditTree t = new EditTree("0123456789");
+		try {
+			t.applyBatch(Arrays.asList(Edit.delete(2, 4), Edit.insert(3, "x")));
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+		try {
+			t.applyBatch(Arrays.asList(Edit.delete(2, 4), Edit.delete(5, 1)));
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+		try {
+			t.applyBatch(Arrays.asList(Edit.insert(11, "x")));
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		assertValid("0123456789", t);
+	}
+
+	@Test
+	public void testSplitAndConcatenateRandom() {
+		Random random = new Random(50);
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			// Mix trees built by add, by the String constructor and by copying.
+			EditTree piece;
+			String s = randomString(random, random.nextInt(200));
+			if (random.nextBoolean()) {
+				piece = new EditTree(s);
+			} else {
+				piece = new EditTree();
+				for (int j = 0; j < s.length(); j++) {
+					piece.add(s.charAt(j), j);
+				}
+				piece = new EditTree(piece);
+			}
+			int pos = random.nextInt(expected.length() + 1);
+			EditTree rest = t.split(pos);
+			assertEquals(expected.substring(pos), rest.toString());
+			t.concatenate(piece);
+			t.concatenate(rest);
+			expected.insert(pos, s);
+			assertValid(expected.toString(), t);
+			if (expected.length() > 0) {
+				int at = random.nextInt(expected.length());
+				assertEquals(expected.charAt(at), t.delete(at));
+				expected.deleteCharAt(at);
+			}
+		}
+		assertValid(expected.toString(), t);
+		assertValid(expected.toString(), new EditTree(t));
+	}
+
+	@Test
+	public void testSplitThrowsIndexExceptions() {
+		EditTree t = new EditTree("abc");
+		try {
+			t.split(4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		assertValid("abc", t);
+	}
+
+	@Test
+	public void testAddStringThrowsIndexExceptions() {
+		EditTree t = new EditTree("abc");
+		try {
+			t.add("xyz", 4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.add("xyz", -1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		assertValid("abc", t);
+	}
+
+	@Test
+	public void testToCharArrayInParallel() {
+		Random random = new Random(20);
+		String s = randomString(random, 5 * EditTree.EXPORT_CHUNK + 123);
+		EditTree t = new EditTree();
+		t.add(s);
+		StringBuilder expected = new StringBuilder(s);
+		for (int i = 0; i < 1000; i++) {
+			int pos = random.nextInt(t.size() + 1);
+			t.add('x', pos);
+			expected.insert(pos, 'x');
+		}
+		t.delete(1000, 2000);
+		expected.delete(1000, 3000);
+		assertTrue(Arrays.equals(expected.toString().toCharArray(), t.toCharArray()));
+		assertEquals(expected.toString(), t.toString());
+		EditTree small = new EditTree("small");
+		assertEquals("small", new String(small.toCharArray()));
+		assertEquals(0, new EditTree().toCharArray().length);
+	}
+}
@@ -0,0 +1,114 @@
+package editortrees;
+
+import static editortrees.TreeTestHelper.assertValid;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that edits near the previous one, which start their search from the
+ * path the previous edit left behind, keep {@link editortrees.EditTree}
+ * correct, including when other kinds of edits come in between.
+ */
+public class EditTreeFingerTest {
+
+	@Test
+	public void testTypingAndBackspacing() {
+		EditTree t = new EditTree("0123456789");
+		StringBuilder expected = new StringBuilder("0123456789");
+		for (int i = 0; i < 500; i++) {
+			t.add((char) ('a' + i % 26), 5 + i);
+			expected.insert(5 + i, (char) ('a' + i % 26));
+		}
+		assertValid(expected.toString(), t);
+		for (int pos = 504; pos >= 300; pos--) {
+			assertEquals(expected.charAt(pos), t.get(pos));
+			assertEquals(expected.charAt(pos), t.delete(pos));
+			expected.deleteCharAt(pos);
+		}
+		assertValid(expected.toString(), t);
+	}
+
+	@Test
+	public void testLocalEditsRandom() {
+		Random random = new Random(17);
+		EditTree t = new EditTree();
+		StringBuilder expected = new StringBuilder();
+		int pos = 0;
+		for (int i = 0; i < 20000; i++) {
+			int move = random.nextInt(100);
+			if (move < 3) {
+				pos = random.nextInt(expected.length() + 1);
+			} else if (move < 15) {
+				pos = Math.max(0, Math.min(expected.length(), pos + random.nextInt(21) - 10));
+			}
+			if (move >= 80 && pos > 0) {
+				pos--;
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else if (move >= 70 && pos < expected.length()) {
+				assertEquals(expected.charAt(pos), t.get(pos));
+			} else {
+				char ch = random.nextInt(10) == 0 ? '\n' : (char) ('a' + random.nextInt(26));
+				t.add(ch, pos++);
+				expected.insert(pos - 1, ch);
+			}
+			if (i % 1000 == 0) {
+				assertValid(expected.toString(), t);
+			}
+		}
+		assertValid(expected.toString(), t);
+	}
+
+	@Test
+	public void testOtherEditsInBetween() {
+		Random random = new Random(18);
+		EditTree t = new EditTree("the quick brown fox jumps over the lazy dog");
+		StringBuilder expected = new StringBuilder(t.toString());
+		for (int i = 0; i < 2000; i++) {
+			int pos = random.nextInt(expected.length() + 1);
+			t.add('x', pos);
+			expected.insert(pos, 'x');
+			switch (random.nextInt(5)) {
+			case 0:
+				t.add("abc", pos);
+				expected.insert(pos, "abc");
+				break;
+			case 1:
+				int length = Math.min(3, expected.length() - pos);
+				t.delete(pos, length);
+				expected.delete(pos, pos + length);
+				break;
+			case 2:
+				EditTree rest = t.split(pos);
+				rest.add('y', 0);
+				t.concatenate(rest);
+				expected.insert(pos, 'y');
+				break;
+			case 3:
+				List<Edit> edits = new ArrayList<Edit>();
+				edits.add(Edit.insert(pos, "zz"));
+				t.applyBatch(edits);
+				expected.insert(pos, "zz");
+				break;
+			default:
+				t = new EditTree(t);
+			}
+			t.add('w', pos);
+			expected.insert(pos, 'w');
+			assertEquals(expected.charAt(pos), t.get(pos));
+			if (pos < expected.length() - 1) {
+				assertEquals(expected.charAt(pos + 1), t.delete(pos + 1));
+				expected.deleteCharAt(pos + 1);
+			}
+			if (i % 100 == 0) {
+				assertValid(expected.toString(), t);
+			}
+		}
+		assertValid(expected.toString(), t);
+	}
+}
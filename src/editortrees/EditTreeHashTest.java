@@ -0,0 +1,133 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the subtree hashes behind {@link editortrees.EditTree#hash(int, int)}
+ * and {@link editortrees.EditTree#rangeEquals(int, EditTree, int, int)}.
+ */
+public class EditTreeHashTest {
+
+	private static long naiveHash(CharSequence s) {
+		long hash = 0;
+		for (int i = 0; i < s.length(); i++) {
+			hash = Node.add(Node.multiply(hash, Node.BASE), s.charAt(i));
+		}
+		return hash;
+	}
+
+	private static void assertHashes(String expected, EditTree t, Random random) {
+		assertEquals(expected, t.toString());
+		assertEquals(naiveHash(expected), t.hash(0, t.size()));
+		for (int i = 0; i < 20; i++) {
+			int pos = random.nextInt(expected.length() + 1);
+			int length = random.nextInt(expected.length() - pos + 1);
+			assertEquals(naiveHash(expected.substring(pos, pos + length)), t.hash(pos, length));
+		}
+	}
+
+	@Test
+	public void testMultiply() {
+		long big = Node.MODULUS - 1;
+		assertEquals(1, Node.multiply(big, big));
+		assertEquals(Node.MODULUS - 2, Node.multiply(big, 2));
+		assertEquals(0, Node.add(big, 1));
+	}
+
+	@Test
+	public void testRangeEquals() {
+		EditTree t = new EditTree("abcabcxabc");
+		assertTrue(t.rangeEquals(0, t, 3, 3));
+		assertTrue(t.rangeEquals(0, t, 7, 3));
+		assertFalse(t.rangeEquals(0, t, 1, 3));
+		assertTrue(t.rangeEquals(4, t, 4, 0));
+		EditTree u = new EditTree();
+		for (char ch : "xabc".toCharArray()) {
+			u.add(ch);
+		}
+		assertTrue(t.rangeEquals(6, u, 0, 4));
+		u.delete(0);
+		u.add('y', 0);
+		assertFalse(t.rangeEquals(6, u, 0, 4));
+		assertTrue(t.rangeEquals(7, u, 1, 3));
+		try {
+			t.rangeEquals(8, u, 0, 3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testSameTextDifferentShapes() {
+		String s = "It was the best of times, it was the worst of times";
+		EditTree built = new EditTree(s);
+		EditTree typed = new EditTree();
+		for (int i = s.length() - 1; i >= 0; i--) {
+			typed.add(s.charAt(i), 0);
+		}
+		assertEquals(built.hash(0, s.length()), typed.hash(0, s.length()));
+		assertTrue(built.rangeEquals(7, typed, 33, 4));
+		assertFalse(built.rangeEquals(7, typed, 33, 5));
+	}
+
+	@Test
+	public void testEditsRandom() {
+		Random random = new Random(18);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			sb.append((char) ('a' + random.nextInt(3)));
+		}
+		EditTree t = new EditTree(sb.toString());
+		StringBuilder expected = new StringBuilder(sb);
+		for (int i = 0; i < 3000; i++) {
+			int pos = random.nextInt(expected.length() + 1);
+			switch (random.nextInt(7)) {
+			case 0:
+			case 1:
+				char ch = (char) ('a' + random.nextInt(3));
+				t.add(ch, pos);
+				expected.insert(pos, ch);
+				break;
+			case 2:
+			case 3:
+				if (pos < expected.length()) {
+					t.delete(pos);
+					expected.deleteCharAt(pos);
+				}
+				break;
+			case 4:
+				t.add("abcab", pos);
+				expected.insert(pos, "abcab");
+				int length = random.nextInt(expected.length() - pos + 1);
+				t.delete(pos, length);
+				expected.delete(pos, pos + length);
+				break;
+			case 5:
+				EditTree rest = t.split(pos);
+				assertHashes(expected.substring(pos), rest, random);
+				t.concatenate(rest);
+				break;
+			default:
+				List<Edit> edits = new ArrayList<Edit>();
+				edits.add(Edit.insert(pos, "cc"));
+				t.applyBatch(edits);
+				expected.insert(pos, "cc");
+				t = new EditTree(t);
+			}
+			if (i % 10 == 0) {
+				assertHashes(expected.toString(), t, random);
+			}
+		}
+		assertHashes(expected.toString(), t, random);
+	}
+}
@@ -0,0 +1,128 @@
+package editortrees;
+
+import static editortrees.TreeTestHelper.NEWLINES;
+import static editortrees.TreeTestHelper.checkCounts;
+import static editortrees.TreeTestHelper.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the line index of {@link editortrees.EditTree}: lineCount(),
+ * lineOfOffset() and offsetOfLine().
+ */
+public class EditTreeLineIndexTest {
+
+	// One character in six is a newline.
+	private static final String ALPHABET = "abcde\n";
+
+	private static void assertLines(String expected, EditTree t) {
+		assertEquals(expected, t.toString());
+		checkCounts(t.root, NEWLINES);
+		List<Integer> starts = new ArrayList<Integer>();
+		starts.add(0);
+		for (int i = 0; i < expected.length(); i++) {
+			if (expected.charAt(i) == '\n') {
+				starts.add(i + 1);
+			}
+		}
+		assertEquals(starts.size(), t.lineCount());
+		for (int line = 0; line < starts.size(); line++) {
+			assertEquals(starts.get(line).intValue(), t.offsetOfLine(line));
+		}
+		int line = 0;
+		for (int pos = 0; pos <= expected.length(); pos++) {
+			if (line + 1 < starts.size() && starts.get(line + 1) == pos) {
+				line++;
+			}
+			assertEquals(line, t.lineOfOffset(pos));
+		}
+	}
+
+	@Test
+	public void testSimple() {
+		EditTree t = new EditTree();
+		assertLines("", t);
+		t.add("one\ntwo\n\nfour");
+		assertLines("one\ntwo\n\nfour", t);
+		assertEquals(4, t.lineCount());
+		assertEquals(8, t.offsetOfLine(2));
+		assertEquals(2, t.lineOfOffset(8));
+		assertEquals(3, t.lineOfOffset(t.size()));
+		t.delete(3);
+		assertLines("onetwo\n\nfour", t);
+		try {
+			t.offsetOfLine(3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testSingleCharacterEditsRandom() {
+		Random random = new Random(14);
+		EditTree t = new EditTree(randomString(random, 300, ALPHABET));
+		StringBuilder expected = new StringBuilder(t.toString());
+		for (int i = 0; i < 3000; i++) {
+			if (random.nextInt(5) < 2 && expected.length() > 0) {
+				int pos = random.nextInt(expected.length());
+				t.delete(pos);
+				expected.deleteCharAt(pos);
+			} else {
+				int pos = random.nextInt(expected.length() + 1);
+				char ch = random.nextInt(4) == 0 ? '\n' : 'x';
+				t.add(ch, pos);
+				expected.insert(pos, ch);
+			}
+			if (i % 100 == 0) {
+				assertLines(expected.toString(), t);
+			}
+		}
+		assertLines(expected.toString(), t);
+		assertLines(expected.toString(), new EditTree(t));
+	}
+
+	@Test
+	public void testBulkEditsRandom() {
+		Random random = new Random(15);
+		EditTree t = new EditTree(randomString(random, 500, ALPHABET));
+		StringBuilder expected = new StringBuilder(t.toString());
+		for (int i = 0; i < 300; i++) {
+			int pos = random.nextInt(expected.length() + 1);
+			switch (random.nextInt(4)) {
+			case 0:
+				String s = randomString(random, random.nextInt(100), ALPHABET);
+				t.add(s, pos);
+				expected.insert(pos, s);
+				break;
+			case 1:
+				int length = random.nextInt(expected.length() - pos + 1);
+				assertLines(expected.substring(pos, pos + length), t.delete(pos, length));
+				expected.delete(pos, pos + length);
+				break;
+			case 2:
+				EditTree rest = t.split(pos);
+				assertLines(expected.substring(pos), rest);
+				t.concatenate(rest);
+				break;
+			default:
+				List<Edit> edits = new ArrayList<Edit>();
+				String inserted = randomString(random, 5, ALPHABET);
+				edits.add(Edit.insert(pos, inserted));
+				if (pos < expected.length()) {
+					edits.add(Edit.delete(pos, 1));
+					expected.deleteCharAt(pos);
+				}
+				t.applyBatch(edits);
+				expected.insert(pos, inserted);
+			}
+			assertLines(expected.toString(), t);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package editortrees;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditTree#writeTo(java.nio.channels.WritableByteChannel, Charset)}
+ */
+public class EditTreeWriteTest {
+
+	private static byte[] write(EditTree t, Charset charset) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long written = t.writeTo(Channels.newChannel(out), charset);
+		assertEquals(out.size(), written);
+		return out.toByteArray();
+	}
+
+	private static void assertWrites(String s, Charset charset) throws IOException {
+		assertArrayEquals(s.getBytes(charset), write(new EditTree(s), charset));
+	}
+
+	@Test
+	public void testSmallTexts() throws IOException {
+		String s = "h\u00e9llo\n\u4e2d\u6587 \ud83d\ude00";
+		assertWrites(s, StandardCharsets.UTF_8);
+		assertWrites(s, StandardCharsets.UTF_16);
+		assertWrites(s, StandardCharsets.ISO_8859_1);
+		assertWrites("", StandardCharsets.UTF_8);
+		assertWrites("unpaired \ud83d surrogate", StandardCharsets.UTF_8);
+		assertWrites("ends with \ud83d", StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testSurrogatesAcrossChunks() throws IOException {
+		Random random = new Random(22);
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 3 * EditTree.WRITE_CHUNK) {
+			if (random.nextInt(4) == 0) {
+				sb.append("\ud83d\ude00");
+			} else {
+				sb.append((char) ('a' + random.nextInt(26)));
+			}
+		}
+		// A pair exactly across the first chunk boundary.
+		sb.replace(EditTree.WRITE_CHUNK - 1, EditTree.WRITE_CHUNK + 1, "\ud83d\ude00");
+		String s = sb.toString();
+		EditTree t = new EditTree();
+		for (int i = 0; i < s.length(); i += 1000) {
+			t.add(s.substring(i, Math.min(s.length(), i + 1000)));
+		}
+		assertArrayEquals(s.getBytes(StandardCharsets.UTF_8), write(t, StandardCharsets.UTF_8));
+		assertArrayEquals(s.getBytes(StandardCharsets.UTF_16LE), write(t, StandardCharsets.UTF_16LE));
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		String s = "line one\nline \u00fc\u00df two\n\ud83d\ude00";
+		File file = File.createTempFile("editortree", ".txt");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			new EditTree(s).writeTo(out.getChannel(), StandardCharsets.UTF_8);
+		} finally {
+			out.close();
+		}
+		assertEquals(s, EditTree.load(file, StandardCharsets.UTF_8).toString());
+	}
+}
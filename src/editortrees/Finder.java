@@ -0,0 +1,121 @@
+package editortrees;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Finds a pattern in an EditTree with Boyer-Moore-Horspool, reading the tree
+ * through a Cursor instead of copying it into a String. The characters under
+ * the current window are kept in a ring buffer as long as the pattern, which
+ * is all the memory a search needs. Searching backward is the same search run
+ * over the text and the pattern both reversed.
+ *
+ * The shift table is indexed by the low byte of a character, and keeps the
+ * smallest shift of all the pattern's characters sharing that byte, so it is
+ * small enough to build for every query and still never shifts past a match.
+ *
+ * As a finder it returns the positions of the matches in order, each one
+ * starting after the end of the previous one. Like a Cursor, it must not be
+ * used after the tree is edited.
+ */
+final class Finder implements PrimitiveIterator.OfInt {
+
+	private final Cursor cursor;
+	private final boolean forward;
+	private final int size;
+	private final char[] pattern; // reversed when searching backward
+	private final int[] shift = new int[256];
+	private final char[] window;
+	private final int mask;
+	// Start of the window, counted from the end of the tree when searching
+	// backward, and how many characters have been read into the buffer.
+	private int start;
+	private int read;
+	private int next = -1;
+	private boolean searched = false;
+
+	/**
+	 * @param from where the search starts: the first position a match may
+	 *             start at if searching forward, or the position the last
+	 *             possible match ends at if searching backward
+	 */
+	Finder(EditTree tree, CharSequence pattern, boolean forward, int from) {
+		int length = pattern.length();
+		this.forward = forward;
+		this.size = tree.size();
+		this.pattern = new char[length];
+		for(int i = 0; i < length; i++) {
+			this.pattern[i] = pattern.charAt(forward ? i : length - 1 - i);
+		}
+		for(int i = 0; i < this.shift.length; i++) {
+			this.shift[i] = length;
+		}
+		for(int i = 0; i < length - 1; i++) {
+			this.shift[this.pattern[i] & 0xFF] = length - 1 - i;
+		}
+		int capacity = Integer.highestOneBit(Math.max(length, 1) * 2 - 1);
+		this.window = new char[capacity];
+		this.mask = capacity - 1;
+		this.start = forward ? from : this.size - from;
+		this.read = this.start;
+		this.cursor = tree.cursor(from);
+	}
+
+	/**
+	 * @return the position of the next match, or -1 if there are no more
+	 */
+	int find() {
+		int length = this.pattern.length;
+		if(length == 0 || this.start + length > this.size) {
+			return -1;
+		}
+		fill(this.start + length);
+		while(true) {
+			int last = this.start + length - 1;
+			int j = length - 1;
+			while(j >= 0 && this.window[(this.start + j) & this.mask] == this.pattern[j]) {
+				j--;
+			}
+			if(j < 0) {
+				int match = this.forward ? this.start : this.size - this.start - length;
+				this.start += length;
+				return match;
+			}
+			this.start += this.shift[this.window[last & this.mask] & 0xFF];
+			if(this.start + length > this.size) {
+				return -1;
+			}
+			fill(this.start + length);
+		}
+	}
+
+	/**
+	 * Reads the characters up to end into the buffer, over the ones that have
+	 * left the window.
+	 */
+	private void fill(int end) {
+		// No shift is longer than the pattern, so the window never skips
+		// characters that haven't been read.
+		for(; this.read < end; this.read++) {
+			this.window[this.read & this.mask] = this.forward ? this.cursor.next() : this.cursor.previous();
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(!this.searched) {
+			this.next = find();
+			this.searched = true;
+		}
+		return this.next >= 0;
+	}
+
+	@Override
+	public int nextInt() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		this.searched = false;
+		return this.next;
+	}
+}
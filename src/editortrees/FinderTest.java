@@ -0,0 +1,112 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the searches on {@link editortrees.EditTree}: indexOf(),
+ * lastIndexOf() and findAll().
+ */
+public class FinderTest {
+
+	private static EditTree typed(String s) {
+		EditTree t = new EditTree();
+		for (int i = 0; i < s.length(); i++) {
+			t.add(s.charAt(i));
+		}
+		return t;
+	}
+
+	@Test
+	public void testIndexOf() {
+		EditTree t = typed("the cat sat on the mat");
+		assertEquals(0, t.indexOf("the"));
+		assertEquals(15, t.indexOf("the", 1));
+		assertEquals(19, t.indexOf("mat"));
+		assertEquals(-1, t.indexOf("dog"));
+		assertEquals(-1, t.indexOf("mat", 20));
+		assertEquals(4, t.indexOf("c"));
+		assertEquals(0, t.indexOf("the cat sat on the mat"));
+		assertEquals(-1, t.indexOf("the cat sat on the mat!"));
+		assertEquals(5, t.indexOf("", 5));
+		assertEquals(22, t.indexOf("", 30));
+		assertEquals(0, t.indexOf("the", -3));
+	}
+
+	@Test
+	public void testLastIndexOf() {
+		EditTree t = typed("the cat sat on the mat");
+		assertEquals(15, t.lastIndexOf("the"));
+		assertEquals(0, t.lastIndexOf("the", 14));
+		assertEquals(19, t.lastIndexOf("mat"));
+		assertEquals(8, t.lastIndexOf("sat", 100));
+		assertEquals(-1, t.lastIndexOf("the", -1));
+		assertEquals(22, t.lastIndexOf(""));
+		assertEquals(-1, new EditTree().lastIndexOf("a"));
+	}
+
+	@Test
+	public void testFindAll() {
+		EditTree t = typed("aaaaa");
+		PrimitiveIterator.OfInt matches = t.findAll("aa");
+		assertEquals(0, matches.nextInt());
+		assertEquals(2, matches.nextInt());
+		assertFalse(matches.hasNext());
+		try {
+			matches.nextInt();
+			fail("Did not throw NoSuchElementException");
+		} catch (java.util.NoSuchElementException e) {
+			// success
+		}
+		try {
+			t.findAll("");
+			fail("Did not throw IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testAgainstStringRandom() {
+		Random random = new Random(19);
+		for (int round = 0; round < 200; round++) {
+			StringBuilder sb = new StringBuilder();
+			int size = random.nextInt(400);
+			for (int i = 0; i < size; i++) {
+				// Characters 256 apart share a shift table entry.
+				sb.append((char) ('a' + random.nextInt(3) + 256 * random.nextInt(2)));
+			}
+			String s = sb.toString();
+			EditTree t = new EditTree(s);
+			for (int i = 0; i < 20; i++) {
+				String pattern;
+				if (size > 0 && random.nextBoolean()) {
+					int pos = random.nextInt(size);
+					pattern = s.substring(pos, Math.min(size, pos + 1 + random.nextInt(8)));
+				} else {
+					StringBuilder p = new StringBuilder();
+					for (int j = random.nextInt(5); j >= 0; j--) {
+						p.append((char) ('a' + random.nextInt(3) + 256 * random.nextInt(2)));
+					}
+					pattern = p.toString();
+				}
+				int from = random.nextInt(size + 10) - 5;
+				assertEquals(s.indexOf(pattern, from), t.indexOf(pattern, from));
+				assertEquals(s.lastIndexOf(pattern, from), t.lastIndexOf(pattern, from));
+				PrimitiveIterator.OfInt matches = t.findAll(pattern);
+				int expected = s.indexOf(pattern);
+				while (expected >= 0) {
+					assertEquals(expected, matches.nextInt());
+					expected = s.indexOf(pattern, expected + pattern.length());
+				}
+				assertFalse(matches.hasNext());
+			}
+		}
+	}
+}
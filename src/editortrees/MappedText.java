@@ -0,0 +1,126 @@
+package editortrees;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes a file's characters one at a time, for building an EditTree
+ * straight from the file. The file is memory-mapped a segment at a time, so
+ * files bigger than one mapping (2 GB) work too, and decoded into a small
+ * buffer, so besides the tree nothing as big as the file is ever allocated.
+ * Bytes that aren't valid in the charset are replaced, as in new String(bytes,
+ * charset).
+ */
+final class MappedText {
+
+	static final long SEGMENT = 1L << 28;
+	private static final int BUFFER = 8192;
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private final long segment;
+	private final CharsetDecoder decoder;
+	private final CharBuffer chars = CharBuffer.allocate(BUFFER);
+	private ByteBuffer bytes;
+	private long mapped; // file position of the start of bytes
+	private boolean decoded; // all the bytes, and only flush() is left
+	private boolean flushed;
+
+	MappedText(FileChannel channel, Charset charset) throws IOException {
+		this(channel, charset, SEGMENT);
+	}
+
+	MappedText(FileChannel channel, Charset charset, long segment) throws IOException {
+		this.channel = channel;
+		this.fileSize = channel.size();
+		this.segment = segment;
+		this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		rewind();
+	}
+
+	/**
+	 * Starts reading over from the beginning of the file.
+	 */
+	void rewind() throws IOException {
+		this.decoder.reset();
+		this.decoded = false;
+		this.flushed = false;
+		map(0);
+		this.chars.clear();
+		this.chars.flip();
+	}
+
+	/**
+	 * Reads the whole file through once.
+	 * 
+	 * @return the number of characters in it
+	 */
+	long count() throws IOException {
+		long count = 0;
+		while(fill()) {
+			count += this.chars.remaining();
+			this.chars.position(this.chars.limit());
+		}
+		return count;
+	}
+
+	/**
+	 * @return the next character of the file
+	 * @throws UncheckedIOException if the next part of the file can't be
+	 *                              mapped
+	 */
+	char next() throws UncheckedIOException {
+		if(!this.chars.hasRemaining()) {
+			try {
+				if(!fill()) {
+					throw new IllegalStateException("past the end of the file");
+				}
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return this.chars.get();
+	}
+
+	/**
+	 * Decodes the next buffer full of characters, mapping the next segment of
+	 * the file when this one runs out. A character split between two
+	 * segments is left undecoded, so the next segment is mapped starting
+	 * with it.
+	 * 
+	 * @return false if the file has no more characters
+	 */
+	private boolean fill() throws IOException {
+		this.chars.clear();
+		while(this.chars.position() == 0 && !this.flushed) {
+			if(!this.decoded) {
+				boolean last = this.mapped + this.bytes.limit() == this.fileSize;
+				if(this.decoder.decode(this.bytes, this.chars, last).isOverflow()) {
+					break;
+				}
+				if(!last) {
+					map(this.mapped + this.bytes.position());
+					continue;
+				}
+				this.decoded = true;
+			}
+			this.flushed = this.decoder.flush(this.chars).isUnderflow();
+		}
+		this.chars.flip();
+		return this.chars.hasRemaining();
+	}
+
+	private void map(long position) throws IOException {
+		this.mapped = position;
+		this.bytes = this.channel.map(FileChannel.MapMode.READ_ONLY, position,
+				Math.min(this.segment, this.fileSize - position));
+	}
+}
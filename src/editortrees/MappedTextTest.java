@@ -0,0 +1,89 @@
+package editortrees;
+
+import static editortrees.TreeTestHelper.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditTree#load(File, Charset)} and the
+ * {@link editortrees.MappedText} it reads files with.
+ */
+public class MappedTextTest {
+
+	// One to four bytes in UTF-8, and a surrogate pair in UTF-16.
+	private static final String ALPHABET = "abc \n\u00e9\u00df\u4e2d\u6587\ud83d\ude00";
+
+	private static File write(byte[] bytes) throws IOException {
+		File file = File.createTempFile("editortree", ".txt");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static void assertLoads(String expected, File file, Charset charset) throws IOException {
+		EditTree t = EditTree.load(file, charset);
+		assertEquals(expected, t.toString());
+		assertEquals(expected.length(), t.slowSize());
+		assertTrue(t.ranksMatchLeftSubtreeSize());
+		assertTrue(t.balanceCodesAreCorrect());
+		assertEquals(new EditTree(expected).toRankString(), t.toRankString());
+		assertEquals(expected.split("\n", -1).length, t.lineCount());
+		assertEquals(new EditTree(expected).hash(0, expected.length()), t.hash(0, t.size()));
+	}
+
+	@Test
+	public void testLoad() throws IOException {
+		String s = "first line\nsecond line\n\u00fcml\u00e4uts \u4e2d\u6587 \ud83d\ude00\n";
+		assertLoads(s, write(s.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+		assertLoads(s, write(s.getBytes(StandardCharsets.UTF_16LE)), StandardCharsets.UTF_16LE);
+		assertLoads("", write(new byte[0]), StandardCharsets.UTF_8);
+		assertLoads("x", write(new byte[] { 'x' }), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testMalformedBytesAreReplaced() throws IOException {
+		byte[] bytes = { 'a', (byte) 0xff, 'b', (byte) 0xe4, (byte) 0xb8 };
+		assertLoads(new String(bytes, StandardCharsets.UTF_8), write(bytes), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testCharactersSplitBetweenSegments() throws IOException {
+		Random random = new Random(21);
+		for (int round = 0; round < 20; round++) {
+			String s = randomString(random, random.nextInt(500), ALPHABET);
+			File file = write(s.getBytes(StandardCharsets.UTF_8));
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try {
+				MappedText text = new MappedText(channel, StandardCharsets.UTF_8, 5 + random.nextInt(20));
+				assertEquals(s.length(), text.count());
+				text.rewind();
+				EditTree t = new EditTree(Node.buildTree(s.length(), text), s.length());
+				assertEquals(s, t.toString());
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	@Test
+	public void testLargeFile() throws IOException {
+		String s = randomString(new Random(22), 100000, ALPHABET);
+		assertLoads(s, write(s.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+	}
+}
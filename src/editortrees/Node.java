@@ -1,10 +1,13 @@
 package editortrees;
 
 import java.util.ArrayList;
+import java.util.Random;
 
+import editortrees.EditTree.Batch;
 import editortrees.EditTree.HeightandBalance;
 import editortrees.EditTree.Nodeinfo;
-import editortrees.EditTree.Track;
+import editortrees.EditTree.Path;
+import editortrees.EditTree.Split;
 
 /**
  * A node in a height-balanced binary tree with rank. Except for the NULL_NODE,
@@ -35,17 +38,42 @@ public class Node {
 	// The fields would normally be private, but for the purposes of this class,
 	// we want to be able to test the results of the algorithms in addition to the
 	// "publicly visible" effects
-	DisplayableNodeWrapper displayableNodeWrapper;
 	char data;
 	Node left, right; // subtrees
 	int rank; // inorder position of this node within its own subtree.
 	Node parent;
 	Node child;
-	Balance rebalance = new Balance();
-	Code balance;
+	Code balance; // one of the shared Code constants, so nothing per node
 	int height = 1;
 	int leftsize= 0;
 	int rightsize = 0;
+	int newlines = 0; // number of '\n' characters in this whole subtree
+	// Polynomial hash of this subtree's text modulo MODULUS, kept up to date
+	// by every edit; see updateHash().
+	long hash = 0;
+	// Where CheckpointFile last wrote this node, tagged with the file's
+	// generation, or -1 if its subtree changed since. Cleared wherever the
+	// hash is updated.
+	long saved = -1;
+
+	static final long MODULUS = (1L << 61) - 1;
+	// Picked at random so that no fixed input can be made to collide.
+	static final long BASE = (1L << 16) + (new Random().nextLong() >>> 4) % (MODULUS - (1L << 17));
+	// BASE to the powers 0 to 2^16 - 1, and to the multiples of 2^16 below
+	// 2^31, so that power() is one multiply for any size.
+	private static final long[] LOW_POWERS = new long[1 << 16];
+	private static final long[] HIGH_POWERS = new long[1 << 15];
+	static {
+		LOW_POWERS[0] = 1;
+		for(int i = 1; i < LOW_POWERS.length; i++) {
+			LOW_POWERS[i] = multiply(LOW_POWERS[i - 1], BASE);
+		}
+		HIGH_POWERS[0] = 1;
+		long step = multiply(LOW_POWERS[LOW_POWERS.length - 1], BASE);
+		for(int i = 1; i < HIGH_POWERS.length; i++) {
+			HIGH_POWERS[i] = multiply(HIGH_POWERS[i - 1], step);
+		}
+	}
 
 	// Feel free to add other fields that you find useful.
 	// You probably want a NULL_NODE, but you can comment it out if you decide
@@ -54,6 +82,12 @@ public class Node {
 	// but they could be anything since you shouldn't ever actually refer to them in
 	// your code.
 	static final Node NULL_NODE = new Node('\0', null, null);
+	static {
+		// Leaves have height 1, so the empty tree below them has height 0. This
+		// is the only write to the NULL_NODE ever: it is shared by every tree on
+		// every thread, so the edit code only reads it.
+		NULL_NODE.height = 0;
+	}
 	// Node parent; You may want parent, but think twice: keeping it up-to-date
 	// takes effort too, maybe more than it's worth.
 	
@@ -70,15 +104,15 @@ public class Node {
 		this.data = data;
 		this.left = left;
 		this.right = right;
-		displayableNodeWrapper = new DisplayableNodeWrapper(this);
 	}
 
 	public Node(char data) {
 		// Make a leaf
 		this(data, NULL_NODE, NULL_NODE);
 		this.rank = 0;
-		this.rebalance.code = Code.SAME;
 		this.balance = Code.SAME;
+		this.newlines = newlineCount(data);
+		this.hash = data;
 	}
 	
 	public Node(char data,int rank, Code code) {
@@ -86,7 +120,6 @@ public class Node {
 		this(data, null, null);
 
 		this.rank = rank;
-		this.rebalance.code = code;
 		this.balance = code;
 	}
 	
@@ -128,227 +161,259 @@ public class Node {
 //	}
 
 
-	public Node add(char ch, int pos, Nodeinfo rotations) {
-		// TODO Auto-generated method stub
-		if(this == NULL_NODE && pos != 0) {
-			throw new IndexOutOfBoundsException();
-		}
-		if(this == NULL_NODE) {
-			return new Node(ch);
-		}
-		else if(pos <= this.rank ) {
-			this.rank++;
-			left = left.add(ch, pos,rotations);
-			leftsize++;
-			this.height = Math.max(this.left.height, this.right.height) + 1;			
-			this.updateCode("Left");
-		}
-		else if(pos > this.rank) {
-			pos = pos - rank - 1;
-			right = right.add(ch, pos,rotations);
-			rightsize++;
-			this.height = Math.max(this.left.height, this.right.height) + 1;	
-			this.updateCode("Right");
-		}
-		if(rebalance.balanced == false) {
-			rotations.count++;
-			if(this.left.left == NULL_NODE) {
-				this.left.left.height = 0;
-			}
-			if(this.left.right == NULL_NODE) {
-				this.left.right.height = 0;
-			}
-			//single left
-			if(this.rebalance.code.equals(Code.RIGHT) && this.right.rebalance.code.equals(Code.RIGHT)) {
-				return this.singleRotateLeft();
-			}
-			//single right
-			else if(this.rebalance.code.equals(Code.LEFT) && this.left.rebalance.code.equals(Code.LEFT)){
-				return this.singleRotateRight();
-			}
-			//double left when right left
-			else if(this.rebalance.code.equals(Code.RIGHT)  && this.right.rebalance.code.equals(Code.LEFT)) {
-				rotations.count++;
-				this.right = this.right.singleRotateRight();
-				return this.singleRotateLeft();
+	/**
+	 * Adds ch at pos in this subtree. The search path is recorded in path on
+	 * the way down, and the ranks, heights and rotations are fixed on the way
+	 * back up it, so there is no recursion. The search starts from the deepest
+	 * node the previous edit's path shares with this one, rather than from the
+	 * root, so edits near the last one skip most of the way down. Nothing is
+	 * changed if pos turns out to be out of range.
+	 * 
+	 * @return the new root of this subtree
+	 */
+	public Node add(char ch, int pos, Nodeinfo rotations, Path path) {
+		Node current = path.resume(this, pos, true);
+		int start = path.start;
+		pos -= start;
+		while(current != NULL_NODE) {
+			if(pos <= current.rank) {
+				path.push(current, true, start);
+				current = current.left;
 			}
-			//double right when left right
 			else {
-				rotations.count++;
-				this.left = this.left.singleRotateLeft();
-				return this.singleRotateRight();
-				}
+				path.push(current, false, start);
+				start += current.rank + 1;
+				pos = pos - current.rank - 1;
+				current = current.right;
+			}
 		}
-		this.height = Math.max(this.left.height, this.right.height) + 1;
-		return this;
+		if(pos != 0) {
+			throw new IndexOutOfBoundsException();
+		}
+		return fixPath(new Node(ch), 1, newlineCount(ch), rotations, path);
 	}
 
-	public Node delete(int pos, Nodeinfo rotations) {
-		// TODO Auto-generated method stub
-		if(this == NULL_NODE) {
-			return this;
-		}
-		//traverse left
-		else if(pos < rank) {
-			this.rank--;
-			this.left = this.left.delete(pos, rotations);
-			this.leftsize--;
-			this.height = Math.max(left.height, right.height) + 1;
-			this.updateCode("Right");
-		}
-		//traverse right
-		else if(pos > rank) {
-			pos = pos - rank - 1;
-			this.right = this.right.delete(pos, rotations);
-			this.rightsize--;
-			this.height = Math.max(left.height, right.height) + 1;
-			this.updateCode("Left");
-		}
-		//delete happens here
-		else if(pos == rank){
-			Node temp;
-			if(this.left == NULL_NODE && this.right == NULL_NODE) {
-				return NULL_NODE;
-			}
-			else if(this.left == NULL_NODE) {
-				return this.right;
-			}
-			else if(this.right == NULL_NODE) {
-				return this.left;
-			}
-			else {
-				temp = this.right;
-				while(temp.left != NULL_NODE) {
-					temp = temp.left;
-					this.rightsize--;
-				}
-				this.data = temp.data;
-				char ri = this.right.data;
-				this.right = this.right.delete(0, rotations);
-				
-				if(this.right == NULL_NODE || this.right.data != ri) {
-					this.rightsize = this.rightsize-1;
-				}
-				
-				this.height = Math.max(this.left.height, this.right.height) + 1;
-				if(temp != NULL_NODE) {
-					this.updateCode("Left");
-				}
-//				return this;
-				}
-			}
-		
-		if(rebalance.balanced == false) {
-			rotations.count++;
-			if(this.left.left == NULL_NODE) {
-				this.left.left.height = 0;
-			}
-			if(this.left.right == NULL_NODE) {
-				this.left.right.height = 0;
+	/**
+	 * Deletes the character at pos from this subtree, walking down to it with
+	 * an explicit path like add() does. A node with two children takes the
+	 * data of its in-order successor, and the successor's node is removed
+	 * instead.
+	 * 
+	 * @return the new root of this subtree
+	 */
+	public Node delete(int pos, Nodeinfo rotations, Path path) {
+		Node current = path.resume(this, pos, false);
+		int start = path.start;
+		pos -= start;
+		while(current != NULL_NODE && pos != current.rank) {
+			if(pos < current.rank) {
+				path.push(current, true, start);
+				current = current.left;
 			}
-			//single left
-			if(this.rebalance.code.equals(Code.RIGHT) && this.right.rebalance.code.equals(Code.RIGHT)) {
-				return this.singleRotateLeft();
-			}
-			//single right
-			else if(this.rebalance.code.equals(Code.LEFT) && this.left.rebalance.code.equals(Code.LEFT)){
-				return this.singleRotateRight();
-			}
-			//double left when right left
-			else if(this.rebalance.code.equals(Code.RIGHT)  && this.right.rebalance.code.equals(Code.LEFT)) {
-				rotations.count++;
-				this.right = this.right.singleRotateRight();
-				return this.singleRotateLeft();
-			}
-			//double right when left right
 			else {
-				rotations.count++;
-				this.left = this.left.singleRotateLeft();
-				return this.singleRotateRight();
+				path.push(current, false, start);
+				start += current.rank + 1;
+				pos = pos - current.rank - 1;
+				current = current.right;
 			}
 		}
-		
-		this.height = Math.max(this.left.height, this.right.height) + 1;
-		return this;
-	}
-
-	class Balance{
-		private Code code = Code.SAME;
-		private boolean balanced = true;
+		if(current == NULL_NODE) {
+			throw new IndexOutOfBoundsException();
+		}
+		int lostNewlines = newlineCount(current.data);
+		if(current.left == NULL_NODE) {
+			return fixPath(current.right, -1, -lostNewlines, rotations, path);
+		}
+		if(current.right == NULL_NODE) {
+			return fixPath(current.left, -1, -lostNewlines, rotations, path);
+		}
+		Node target = current;
+		int targetDepth = path.depth;
+		path.push(current, false, start);
+		start += current.rank + 1;
+		current = current.right;
+		while(current.left != NULL_NODE) {
+			path.push(current, true, start);
+			current = current.left;
+		}
+		target.data = current.data;
+		// The subtrees below target lose the successor's character rather than
+		// the deleted one; fixPath() takes the deleted one off everything.
+		int correction = lostNewlines - newlineCount(current.data);
+		for(int i = targetDepth + 1; i < path.depth; i++) {
+			path.nodes[i].newlines += correction;
+		}
+		return fixPath(current.right, -1, -lostNewlines, rotations, path);
 	}
-	
-	public void updateCode(String rol) {
-		Code b = this.rebalance.code;
 
-		int lh = this.left.height;
-		int rh = this.right.height;
-		if(this.left == NULL_NODE) {
-			lh = 0;
-		}
-		if(this.right == NULL_NODE) {
-			rh = 0;
-		}
-		if(rol.equals("Right")) {
-			if((b.equals(Code.LEFT) && lh == rh) || (b.equals(Code.SAME) && lh == rh)) {
-				rebalance.code = Code.SAME;
+	/**
+	 * Hangs subtree where the search on path ended, then walks back up the
+	 * path adding delta to the size, and newlineDelta to the newline count, of
+	 * every subtree on it. Heights only need fixing, and rotations only need
+	 * doing, until some subtree ends up as tall as it was before the edit.
+	 * Above the highest rotation the path is still the way down from the root,
+	 * so that much of it is kept for the next edit to start from.
+	 * 
+	 * @return the root of the whole tree
+	 */
+	private static Node fixPath(Node subtree, int delta, int newlineDelta, Nodeinfo rotations, Path path) {
+		boolean heightChanged = true;
+		int valid = path.depth;
+		for(int i = path.depth - 1; i >= 0; i--) {
+			Node parent = path.nodes[i];
+			if(path.wentLeft[i]) {
+				parent.left = subtree;
+				parent.rank += delta;
+				parent.leftsize += delta;
 			}
-			else if(b.equals(Code.SAME)) {
-				rebalance.code = Code.RIGHT;
+			else {
+				parent.right = subtree;
+				parent.rightsize += delta;
 			}
-			else if(b.equals(Code.RIGHT) && (rh - lh > 1)){
-				rebalance.balanced = false;
+			if(heightChanged) {
+				int oldHeight = parent.height;
+				subtree = parent.balanceSubtree(rotations);
+				heightChanged = subtree.height != oldHeight;
+				if(subtree != parent) {
+					valid = i;
+				}
 			}
-		}else if(rol.equals("Left")) {
-			if((b.equals(Code.SAME) && lh == rh) || (b.equals(Code.RIGHT) && lh == rh)) {
-				rebalance.code = Code.SAME;
-			}else if(b.equals(Code.SAME)) {
-				rebalance.code = Code.LEFT;
-				
-			}else if(b.equals(Code.LEFT) && (lh - rh > 1) ){
-				rebalance.balanced = false;
+			else {
+				parent.newlines += newlineDelta;
+				parent.updateHash();
+				parent.saved = -1;
+				subtree = parent;
 			}
 		}
-		this.balance = rebalance.code;
+		path.valid = valid;
+		return subtree;
 	}
-	
 
 	public Node singleRotateLeft() {
 		Node parent = this;
 		Node child = this.right;
 		Node temp = child.left;
 		child.left = parent;
-		parent.rightsize = 0;
+		parent.rightsize = child.rank;
 		parent.right = temp;
-		parent.rebalance.balanced = true;
 		child.rank = parent.rank + child.rank + 1;
-		child.leftsize = parent.leftsize+1;
+		child.leftsize = child.rank;
 
-		parent.nullHeight();
 		parent.height = Math.max(parent.left.height, parent.right.height) + 1;
 		child.height = Math.max(child.left.height, child.right.height) + 1;
+		parent.countNewlines();
+		child.countNewlines();
 		
 		child.left.restoreBalance();
 		child.restoreBalance();
 		return child;
 	}
 
-	public void restoreBalance() {
-		if(this.left == NULL_NODE) {
-			this.left.height = 0;
+	private static int newlineCount(char ch) {
+		return ch == '\n' ? 1 : 0;
+	}
+	
+	/**
+	 * Recounts this subtree's newlines and rehashes it from its children, and
+	 * marks it unsaved. Every node whose subtree changes goes through here or
+	 * through fixPath(), bottom up, so the hashes are always up to date and an
+	 * unsaved node only has unsaved ancestors.
+	 */
+	void countNewlines() {
+		this.newlines = this.left.newlines + this.right.newlines + newlineCount(this.data);
+		updateHash();
+		this.saved = -1;
+	}
+
+	/**
+	 * Recomputes this subtree's hash from its children's, which must be up to
+	 * date, and its rightsize.
+	 */
+	private void updateHash() {
+		this.hash = add(multiply(add(multiply(this.left.hash, BASE), this.data), power(this.rightsize)),
+				this.right.hash);
+	}
+
+	/**
+	 * Sets the hashes of a subtree built top down, whose nodes have the right
+	 * sizes but no hashes yet.
+	 */
+	private void hashSubtree() {
+		if(this.left != NULL_NODE) {
+			this.left.hashSubtree();
+		}
+		if(this.right != NULL_NODE) {
+			this.right.hashSubtree();
 		}
-		if(this.right == NULL_NODE) {
-			this.right.height = 0;
+		updateHash();
+	}
+
+	/**
+	 * @return BASE^size modulo MODULUS
+	 */
+	static long power(int size) {
+		if(size < LOW_POWERS.length) {
+			return LOW_POWERS[size];
 		}
+		return multiply(LOW_POWERS[size & (LOW_POWERS.length - 1)], HIGH_POWERS[size >>> 16]);
+	}
+
+	/**
+	 * The hash of a string c[0] c[1] ... c[k-1] is the sum of c[i] *
+	 * BASE^(k-1-i), modulo MODULUS, so the hash of the concatenation of the
+	 * strings with hash acc and with hash h and length k is acc * BASE^k + h.
+	 * 
+	 * @param acc hash of the characters before position from
+	 * @return the hash of those characters followed by the characters at
+	 *         [from, to) of this subtree
+	 */
+	long hash(int from, int to, long acc) {
+		int size = this.rank + this.rightsize + 1;
+		if(from <= 0 && to >= size) {
+			return add(multiply(acc, power(size)), this.hash);
+		}
+		if(from < this.rank) {
+			acc = this.left.hash(from, Math.min(to, this.rank), acc);
+		}
+		if(from <= this.rank && this.rank < to) {
+			acc = add(multiply(acc, BASE), this.data);
+		}
+		if(to > this.rank + 1) {
+			acc = this.right.hash(Math.max(from - this.rank - 1, 0), to - this.rank - 1, acc);
+		}
+		return acc;
+	}
+
+	/**
+	 * @return a * b modulo MODULUS, for a and b less than MODULUS
+	 */
+	static long multiply(long a, long b) {
+		long high = Math.multiplyHigh(a, b);
+		long low = a * b;
+		// 2^64 = 8 and 2^61 = 1, modulo 2^61 - 1.
+		long sum = (low & MODULUS) + (low >>> 61) + (high << 3);
+		sum = (sum & MODULUS) + (sum >>> 61);
+		return sum >= MODULUS ? sum - MODULUS : sum;
+	}
+
+	/**
+	 * @return a + b modulo MODULUS, for a and b less than MODULUS
+	 */
+	static long add(long a, long b) {
+		long sum = a + b;
+		return sum >= MODULUS ? sum - MODULUS : sum;
+	}
+
+	public void restoreBalance() {
 		if(this.left.height > this.right.height) {
-			this.rebalance.code = Code.LEFT;
+			this.balance = Code.LEFT;
 		}
 		else if(this.left.height < this.right.height) {
-			this.rebalance.code = Code.RIGHT;
+			this.balance = Code.RIGHT;
 		}
 		else {
-			this.rebalance.code = Code.SAME;
+			this.balance = Code.SAME;
 		}
-		this.balance = this.rebalance.code;
 	}
 
 	public Node singleRotateRight() {
@@ -356,38 +421,37 @@ public class Node {
 		Node child = this.left;
 		Node temp = child.right;
 		child.right = parent;
-		parent.leftsize = 0;
 		parent.left = temp;
-		parent.rebalance.balanced = true;
 		parent.rank = parent.rank - child.rank - 1;
+		parent.leftsize = parent.rank;
 		parent.height = Math.max(parent.left.height, parent.right.height) + 1;
 		child.height = Math.max(child.left.height, child.right.height) + 1;
-		child.rightsize = parent.rightsize+1;
+		child.rightsize = parent.rank + parent.rightsize + 1;
+		parent.countNewlines();
+		child.countNewlines();
 		child.right.restoreBalance();
 		child.restoreBalance();
 		return child;
 	}
 	
-	private void nullHeight() {
-		// TODO Auto-generated method stub
-		if(this.left == NULL_NODE) {
-			this.left.height = 0;
-		}
-		if(this.right == NULL_NODE) {
-			this.right.height = 0;
-		}
-	}
-	
-	
-	
-	public StringBuilder toString(StringBuilder string) {
-		if(this == NULL_NODE) {
-			return string;
+	/**
+	 * Writes this subtree's characters in order into chars, starting at
+	 * offset. The stack of nodes still waiting to be written is an array
+	 * instead of the call stack; it never holds more than one node per level.
+	 */
+	public void toChars(char[] chars, int offset) {
+		Node[] stack = new Node[this.height + 1];
+		int depth = 0;
+		Node current = this;
+		while(current != NULL_NODE || depth > 0) {
+			while(current != NULL_NODE) {
+				stack[depth++] = current;
+				current = current.left;
+			}
+			current = stack[--depth];
+			chars[offset++] = current.data;
+			current = current.right;
 		}
-		left.toString(string);
-		string.append(this.data);
-		right.toString(string);
-		return string;
 	}
 	
 	public StringBuilder toRankString(StringBuilder string) {
@@ -411,7 +475,7 @@ public class Node {
 		}
 		string.append(this.data);
 		string.append(this.rank);
-		string.append(this.rebalance.code);
+		string.append(this.balance);
 		string.append(",");
 		string.append(" ");
 		left.toDebugString(string);
@@ -420,101 +484,155 @@ public class Node {
 	}
 	
 	public char get(int pos) {
-		// TODO Auto-generated method stub
-		if(this == NULL_NODE) {
-			throw new IndexOutOfBoundsException();
-		}
-		if(rank > pos) {
-			return left.get(pos);
+		Node current = this;
+		while(current != NULL_NODE) {
+			if(pos < current.rank) {
+				current = current.left;
+			}
+			else if(pos > current.rank) {
+				pos = pos - current.rank - 1;
+				current = current.right;
+			}
+			else {
+				return current.data;
+			}
 		}
-		else if(rank < pos) {
-			pos = pos - rank - 1;
-			return right.get(pos);
+		throw new IndexOutOfBoundsException();
+	}
+	
+	/**
+	 * @return the number of newlines before position pos of this subtree
+	 */
+	int lineOfOffset(int pos) {
+		int line = 0;
+		Node current = this;
+		while(current != NULL_NODE) {
+			if(pos <= current.rank) {
+				current = current.left;
+			}
+			else {
+				line += current.left.newlines + newlineCount(current.data);
+				pos = pos - current.rank - 1;
+				current = current.right;
+			}
 		}
-		return this.data;
+		return line;
 	}
 	
-	public StringBuilder get(int left, int right, StringBuilder string, Track track,int prev) {
-		// TODO Auto-generated method stub
-		
-		if(left<prev && track.tracker != 0 && this.hasLeft()) {
-
-				this.left.get(left,right,string,track,prev+this.left.rank-this.rank);
-
-//			}
-
+	/**
+	 * @param line at least 1 and at most this subtree's newline count
+	 * @return the position just after this subtree's line-th newline
+	 */
+	int offsetAfterNewline(int line) {
+		int offset = 0;
+		Node current = this;
+		while(true) {
+			if(line <= current.left.newlines) {
+				current = current.left;
+				continue;
+			}
+			line -= current.left.newlines + newlineCount(current.data);
+			offset += current.rank + 1;
+			if(line == 0) {
+				return offset;
+			}
+			current = current.right;
 		}
-		
-		if(left <= prev && prev <= right && track.tracker!=0) {
-			track.tracker-=1;
-			string.append(this.data);
+	}
+	
+	/**
+	 * Appends the length characters starting at pos. The walk down to pos
+	 * stacks each node it leaves to the left, which are exactly the nodes that
+	 * come after pos, so the rest is an in-order walk that stops after length
+	 * characters: O(log n + length) without recursion.
+	 */
+	public StringBuilder get(int pos, int length, StringBuilder string) {
+		Node[] stack = new Node[this.height + 1];
+		int depth = 0;
+		Node current = this;
+		while(current != NULL_NODE) {
+			if(pos < current.rank) {
+				stack[depth++] = current;
+				current = current.left;
+			}
+			else if(pos > current.rank) {
+				pos = pos - current.rank - 1;
+				current = current.right;
+			}
+			else {
+				stack[depth++] = current;
+				current = NULL_NODE;
+			}
 		}
-		
-		if(this.hasRight() && track.tracker != 0) {
-			if(this.rank == track.check) {
-				track.lOr = true;
+		while(length > 0) {
+			while(current != NULL_NODE) {
+				stack[depth++] = current;
+				current = current.left;
 			}
-			this.right.get(left, right, string,track,prev+this.right.rank+1);
-
+			current = stack[--depth];
+			string.append(current.data);
+			length--;
+			current = current.right;
 		}
-
-		
-		
-		
-		
-		
-		
 		return string;
 	}
 
-
+	/**
+	 * Checks every rank against the real size of the left subtree in one
+	 * post-order pass. Each level of the explicit stack remembers how far the
+	 * node has got (0: nothing visited, 1: left done, 2: both done) and the size
+	 * of its left subtree; size is the size of the subtree finished last.
+	 * 
+	 * @return the size of this subtree, and whether all of its ranks match
+	 */
 	public HeightandBalance ranksMatchLeftSubtreeSize() {
-		// TODO Auto-generated method stub
-		if(this == NULL_NODE) {
-			return new HeightandBalance(0, true);
-		}
-		HeightandBalance lefthb = left.ranksMatchLeftSubtreeSize();
-		HeightandBalance righthb = right.ranksMatchLeftSubtreeSize();
-		boolean bool = false;
-		if(lefthb.bool && righthb.bool) {
-			if(lefthb.height == rank) {
-				bool = true;
+		Node[] stack = new Node[this.height + 1];
+		int[] leftSizes = new int[this.height + 1];
+		byte[] visited = new byte[this.height + 1];
+		boolean match = true;
+		int size = 0;
+		int depth = 0;
+		if(this != NULL_NODE) {
+			stack[depth++] = this;
+		}
+		while(depth > 0) {
+			Node current = stack[depth - 1];
+			if(visited[depth - 1] == 0) {
+				visited[depth - 1] = 1;
+				size = 0;
+				if(current.left != NULL_NODE) {
+					visited[depth] = 0;
+					stack[depth++] = current.left;
+				}
+			}
+			else if(visited[depth - 1] == 1) {
+				visited[depth - 1] = 2;
+				leftSizes[depth - 1] = size;
+				match = match && size == current.rank;
+				size = 0;
+				if(current.right != NULL_NODE) {
+					visited[depth] = 0;
+					stack[depth++] = current.right;
+				}
+			}
+			else {
+				size = leftSizes[--depth] + size + 1;
 			}
 		}
-		int size = lefthb.height + righthb.height + 1;
-		return new HeightandBalance(size, bool);
+		return new HeightandBalance(size, match);
 	}
 
+	/**
+	 * Follows the taller child, by balance code, down to a leaf.
+	 */
 	public int fastheight(){
-		fastHeight count = new fastHeight();
-		if(this == NULL_NODE) {
-			return -1;
-		}
-		
-		return fastheighthelper(count).fh;
-	}
-	
-	private fastHeight fastheighthelper(fastHeight count) {
-		// TODO Auto-generated method stub
-		if(!this.hasLeft() && !this.hasRight()) {
-			return count;
-		}
-		
-		
-		if(this.rebalance.code == Code.RIGHT) {
-			count.fh = this.right.fastheighthelper(count).fh + 1;
-		}
-		else if(this.rebalance.code == Code.LEFT) {
-			count.fh = this.left.fastheighthelper(count).fh + 1;
+		int height = -1;
+		Node current = this;
+		while(current != NULL_NODE) {
+			height++;
+			current = current.balance == Code.RIGHT ? current.right : current.left;
 		}
-		else {
-			count.fh = this.left.fastheighthelper(count).fh + 1;
-		}
-		return count;
-	}
-
-	class fastHeight {
-		private int fh = 0;
+		return height;
 	}
 	
 	public HeightandBalance balanceCodesCorrect() {
@@ -574,29 +692,284 @@ public class Node {
 		return NULL_NODE;
 	}
 	
-	public Node stringToTree(int l, int r, String s) {
-		// TODO Auto-generated method stub
-		int mid = (l + r)/2;
+	/**
+	 * Builds a balanced tree holding s[l..r] in O(r - l) time, with the middle
+	 * character at the root and each half built the same way below it. The
+	 * ranges still to build wait on an explicit stack, and since that shape
+	 * only depends on how many characters a range holds, every node's height
+	 * and balance code can be set as soon as it is made. The hashes need the
+	 * children's, so they are set in a pass afterwards.
+	 * 
+	 * @return the root of the new tree, or this if the range is empty
+	 */
+	public Node stringToTree(int l, int r, CharSequence s) {
 		if(l > r) {
 			return this;
 		}
-		Node node = new Node(s.charAt(mid));
-		node.rank = mid - l;
-		if(l - r == 1) {
-			node.balance = Code.LEFT;
+		int levels = heightOf(r - l + 1) + 1;
+		// newlinesBefore[i - l] counts the newlines in s[l..i-1].
+		int[] newlinesBefore = new int[r - l + 2];
+		for(int i = l; i <= r; i++) {
+			newlinesBefore[i - l + 1] = newlinesBefore[i - l] + newlineCount(s.charAt(i));
+		}
+		int[] lows = new int[levels];
+		int[] highs = new int[levels];
+		Node[] parents = new Node[levels];
+		boolean[] isLeft = new boolean[levels];
+		Node root = NULL_NODE;
+		int depth = 0;
+		lows[depth] = l;
+		highs[depth] = r;
+		parents[depth] = NULL_NODE;
+		depth++;
+		while(depth > 0) {
+			depth--;
+			int low = lows[depth];
+			int high = highs[depth];
+			Node parent = parents[depth];
+			int mid = (low + high) / 2;
+			Node node = new Node(s.charAt(mid));
+			node.rank = mid - low;
+			node.leftsize = mid - low;
+			node.rightsize = high - mid;
+			node.height = heightOf(high - low + 1);
+			node.newlines = newlinesBefore[high - l + 1] - newlinesBefore[low - l];
+			node.balance = heightOf(node.rightsize) > heightOf(node.leftsize) ? Code.RIGHT : Code.SAME;
+			if(parent == NULL_NODE) {
+				root = node;
+			}
+			else if(isLeft[depth]) {
+				parent.left = node;
+			}
+			else {
+				parent.right = node;
+			}
+			// Push the right half first so the left half is built first.
+			if(mid < high) {
+				lows[depth] = mid + 1;
+				highs[depth] = high;
+				parents[depth] = node;
+				isLeft[depth] = false;
+				depth++;
+			}
+			if(low < mid) {
+				lows[depth] = low;
+				highs[depth] = mid - 1;
+				parents[depth] = node;
+				isLeft[depth] = true;
+				depth++;
+			}
+		}
+		root.hashSubtree();
+		return root;
+	}
+	
+	/**
+	 * Builds a tree of the next size characters of text, with the same shape
+	 * stringToTree() gives size characters. Each subtree is built in order,
+	 * left subtree first, because that is the order text gives the characters
+	 * in. The recursion is only as deep as the tree, and nothing but the nodes
+	 * is allocated.
+	 * 
+	 * @return the root of the new tree
+	 */
+	static Node buildTree(int size, MappedText text) {
+		if(size == 0) {
+			return NULL_NODE;
+		}
+		int leftSize = (size - 1) / 2;
+		Node left = buildTree(leftSize, text);
+		Node node = new Node(text.next());
+		node.right = buildTree(size - 1 - leftSize, text);
+		node.left = left;
+		node.rank = leftSize;
+		node.leftsize = leftSize;
+		node.rightsize = size - 1 - leftSize;
+		node.height = heightOf(size);
+		node.balance = heightOf(node.rightsize) > heightOf(node.leftsize) ? Code.RIGHT : Code.SAME;
+		node.countNewlines();
+		return node;
+	}
+	
+	/**
+	 * @return the height of the tree stringToTree() builds from size characters
+	 */
+	private static int heightOf(int size) {
+		return 32 - Integer.numberOfLeadingZeros(size);
+	}
+	
+	/**
+	 * Joins left, pivot and right, in that order, into one height-balanced
+	 * tree. Every character of left comes before every character of right, and
+	 * pivot is reused as a node between them. This walks down the spine of the
+	 * taller tree only until the heights match, so it is O(|height difference|).
+	 * 
+	 * @return the root of the joined tree
+	 */
+	static Node join(Node left, int leftSize, Node pivot, Node right, int rightSize, Nodeinfo rotations) {
+		if(left.height > right.height + 1) {
+			left.right = join(left.right, leftSize - left.rank - 1, pivot, right, rightSize, rotations);
+			left.rightsize = leftSize - left.rank + rightSize;
+			return left.balanceSubtree(rotations);
+		}
+		if(right.height > left.height + 1) {
+			right.left = join(left, leftSize, pivot, right.left, right.rank, rotations);
+			right.rank = leftSize + 1 + right.rank;
+			right.leftsize = right.rank;
+			return right.balanceSubtree(rotations);
+		}
+		pivot.left = left;
+		pivot.right = right;
+		pivot.rank = leftSize;
+		pivot.leftsize = leftSize;
+		pivot.rightsize = rightSize;
+		pivot.height = Math.max(left.height, right.height) + 1;
+		pivot.countNewlines();
+		pivot.restoreBalance();
+		return pivot;
+	}
+	
+	/**
+	 * Joins two trees without a pivot by borrowing the first node of right.
+	 * 
+	 * @return the root of the joined tree
+	 */
+	static Node concatenate(Node left, int leftSize, Node right, int rightSize, Nodeinfo rotations) {
+		if(rightSize == 0) {
+			return left;
+		}
+		if(leftSize == 0) {
+			return right;
+		}
+		Split first = right.split(1, rightSize, rotations);
+		return join(left, leftSize, first.left, first.right, rightSize - 1, rotations);
+	}
+	
+	/**
+	 * Splits this subtree, which holds size characters, into a tree of the
+	 * characters before pos and a tree of the characters from pos on. Every
+	 * node on the search path is re-joined as a pivot, so this is O(log n).
+	 */
+	Split split(int pos, int size, Nodeinfo rotations) {
+		if(this == NULL_NODE) {
+			return new Split(NULL_NODE, NULL_NODE);
+		}
+		Node oldLeft = this.left;
+		Node oldRight = this.right;
+		if(pos <= this.rank) {
+			Split parts = oldLeft.split(pos, this.rank, rotations);
+			parts.right = join(parts.right, this.rank - pos, this, oldRight, size - this.rank - 1, rotations);
+			return parts;
+		}
+		Split parts = oldRight.split(pos - this.rank - 1, size - this.rank - 1, rotations);
+		parts.left = join(oldLeft, this.rank, this, parts.left, pos - this.rank - 1, rotations);
+		return parts;
+	}
+	
+	/**
+	 * Applies batch.edits[from..to) to this subtree, which holds size
+	 * characters starting at offset in the document before the batch. The
+	 * edits are sorted by position and all touch this subtree. Each node that
+	 * an edit reaches is visited once: its subtrees are edited first, and then
+	 * they are joined back together with the node, or without it if it was
+	 * deleted. Subtrees no edit reaches are reused as they are. Sets batch.size
+	 * to the new size of this subtree.
+	 * 
+	 * @return the root of the edited subtree
+	 */
+	Node applyEdits(int size, int offset, int from, int to, Batch batch) {
+		if(from == to) {
+			batch.size = size;
+			return this;
 		}
-		else if(r - l == 1){
-			node.balance = Code.RIGHT;
+		Edit[] edits = batch.edits;
+		if(this == NULL_NODE) {
+			// Only inserts can reach an empty subtree, all at the same spot.
+			if(to - from == 1 && edits[from].length == 1) {
+				batch.size = 1;
+				return new Node(edits[from].text.charAt(0));
+			}
+			StringBuilder text = new StringBuilder();
+			for(int i = from; i < to; i++) {
+				text.append(edits[i].text);
+			}
+			batch.size = text.length();
+			return NULL_NODE.stringToTree(0, text.length() - 1, text);
+		}
+		int at = offset + this.rank;
+		int leftEnd = from;
+		while(leftEnd < to && edits[leftEnd].before(at)) {
+			leftEnd++;
+		}
+		int rightStart = leftEnd > from ? leftEnd - 1 : from;
+		while(rightStart < to && !edits[rightStart].after(at)) {
+			rightStart++;
+		}
+		boolean deleted = (leftEnd > from && edits[leftEnd - 1].covers(at))
+				|| (leftEnd < to && edits[leftEnd].covers(at));
+		// A subtree no edit reaches isn't even looked at, so it costs nothing.
+		boolean sameHeights = true;
+		Node newLeft = this.left;
+		int leftSize = this.rank;
+		if(from < leftEnd) {
+			int oldHeight = this.left.height;
+			newLeft = this.left.applyEdits(this.rank, offset, from, leftEnd, batch);
+			leftSize = batch.size;
+			sameHeights = newLeft.height == oldHeight;
+		}
+		Node newRight = this.right;
+		int rightSize = size - this.rank - 1;
+		if(rightStart < to) {
+			int oldHeight = this.right.height;
+			newRight = this.right.applyEdits(rightSize, at + 1, rightStart, to, batch);
+			rightSize = batch.size;
+			sameHeights = sameHeights && newRight.height == oldHeight;
+		}
+		if(deleted) {
+			batch.size = leftSize + rightSize;
+			return concatenate(newLeft, leftSize, newRight, rightSize, batch.rotations);
+		}
+		batch.size = leftSize + rightSize + 1;
+		if(sameHeights) {
+			// Still balanced, with the same height and balance code.
+			this.left = newLeft;
+			this.right = newRight;
+			this.rank = leftSize;
+			this.leftsize = leftSize;
+			this.rightsize = rightSize;
+			this.countNewlines();
+			return this;
 		}
-		else {
-			node.balance = Code.SAME;
+		return join(newLeft, leftSize, this, newRight, rightSize, batch.rotations);
+	}
+	
+	/**
+	 * Restores the AVL property at this node after one of its subtrees grew
+	 * or shrank by an add, delete or join, preferring a single rotation when
+	 * either would do. The shapes match the ones the tests expect for add
+	 * (which never has that choice) and for delete.
+	 */
+	private Node balanceSubtree(Nodeinfo rotations) {
+		this.height = Math.max(this.left.height, this.right.height) + 1;
+		this.countNewlines();
+		if(this.right.height - this.left.height > 1) {
+			if(this.right.left.height > this.right.right.height) {
+				rotations.count++;
+				this.right = this.right.singleRotateRight();
+			}
+			rotations.count++;
+			return this.singleRotateLeft();
 		}
-		if(l == r) {
-			return node;
+		if(this.left.height - this.right.height > 1) {
+			if(this.left.right.height > this.left.left.height) {
+				rotations.count++;
+				this.left = this.left.singleRotateLeft();
+			}
+			rotations.count++;
+			return this.singleRotateRight();
 		}
-		node.left = node.left.stringToTree(l, mid - 1, s);
-		node.right = node.right.stringToTree(mid + 1, r, s);
-		return node;
+		this.restoreBalance();
+		return this;
 	}
 	
 //	public Node stringToTree(double index, double left, double right, String s) {
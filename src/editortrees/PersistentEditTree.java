@@ -0,0 +1,135 @@
+package editortrees;
+
+/**
+ * A height-balanced binary tree with rank whose nodes are immutable. Each add
+ * or delete copies only the O(log n) nodes on its root-to-leaf path and shares
+ * every other node with the previous version, so taking a snapshot for undo or
+ * autosave is O(1) instead of the O(n) copy that EditTree(EditTree) makes.
+ */
+public class PersistentEditTree {
+
+	PersistentNode root;
+
+	/**
+	 * Construct an empty tree
+	 */
+	public PersistentEditTree() {
+		this.root = PersistentNode.NULL_NODE;
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time.
+	 *
+	 * @param s
+	 */
+	public PersistentEditTree(String s) {
+		this.root = PersistentNode.buildTree(s, 0, s.length() - 1);
+	}
+
+	/**
+	 * Create a tree with the same contents as e, in O(N) time.
+	 *
+	 * @param e
+	 */
+	public PersistentEditTree(EditTree e) {
+		this(e.toString());
+	}
+
+	PersistentEditTree(PersistentNode root) {
+		this.root = root;
+	}
+
+	/**
+	 * O(1): the snapshot shares all of its nodes with this tree, and later
+	 * edits to either one never show up in the other.
+	 *
+	 * @return a tree holding this tree's current contents
+	 */
+	public PersistentEditTree snapshot() {
+		return new PersistentEditTree(this.root);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder(size());
+		this.root.get(0, size(), string);
+		return string.toString();
+	}
+
+	/**
+	 * @return the number of characters in this tree
+	 */
+	public int size() {
+		return this.root.size;
+	}
+
+	/**
+	 * @param ch character to add to the end of this tree.
+	 */
+	public void add(char ch) {
+		add(ch, size());
+	}
+
+	/**
+	 * @param ch  character to add
+	 * @param pos character added in this in-order position. Valid positions
+	 *            range from 0 to the size of the tree, inclusive.
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos > size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.root = this.root.add(ch, pos);
+	}
+
+	/**
+	 * @param pos position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException if pos is negative or too big.
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos >= size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		return this.root.get(pos);
+	}
+
+	/**
+	 * @param pos    location of the beginning of the string to retrieve
+	 * @param length length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if(pos < 0 || length < 0 || pos + length > size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		StringBuilder string = new StringBuilder(length);
+		this.root.get(pos, pos + length, string);
+		return string.toString();
+	}
+
+	/**
+	 * @param pos position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos >= size()) {
+			throw new IndexOutOfBoundsException();
+		}
+		char value = this.root.get(pos);
+		this.root = this.root.delete(pos);
+		return value;
+	}
+
+	/**
+	 * @return the height of this tree, where an empty tree has height -1
+	 */
+	public int height() {
+		return this.root.height - 1;
+	}
+}
@@ -0,0 +1,142 @@
+package editortrees;
+
+import static editortrees.TreeTestHelper.maxHeight;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.PersistentEditTree}
+ */
+public class PersistentEditTreeTest {
+
+	private static void collect(PersistentNode node, IdentityHashMap<PersistentNode, Boolean> nodes) {
+		if (node == PersistentNode.NULL_NODE) {
+			return;
+		}
+		nodes.put(node, true);
+		collect(node.left, nodes);
+		collect(node.right, nodes);
+	}
+
+	@Test
+	public void testAddGetDelete() {
+		PersistentEditTree t = new PersistentEditTree();
+		t.add('b');
+		t.add('a', 0);
+		t.add('c');
+		assertEquals("abc", t.toString());
+		assertEquals('b', t.get(1));
+		assertEquals('a', t.delete(0));
+		assertEquals("bc", t.toString());
+		assertEquals("c", t.get(1, 1));
+	}
+
+	@Test
+	public void testSnapshotsAreIndependent() {
+		PersistentEditTree t = new PersistentEditTree("hello world");
+		PersistentEditTree before = t.snapshot();
+		t.add('!');
+		t.delete(0);
+		PersistentEditTree after = t.snapshot();
+		t.add('H', 0);
+		assertEquals("hello world", before.toString());
+		assertEquals("ello world!", after.toString());
+		assertEquals("Hello world!", t.toString());
+		before.delete(5);
+		assertEquals("helloworld", before.toString());
+		assertEquals("Hello world!", t.toString());
+	}
+
+	@Test
+	public void testEditsShareUntouchedNodes() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		PersistentEditTree t = new PersistentEditTree(sb.toString());
+		IdentityHashMap<PersistentNode, Boolean> before = new IdentityHashMap<PersistentNode, Boolean>();
+		collect(t.root, before);
+		PersistentEditTree snapshot = t.snapshot();
+		t.add('x', 50000);
+		t.delete(1234);
+		IdentityHashMap<PersistentNode, Boolean> after = new IdentityHashMap<PersistentNode, Boolean>();
+		collect(t.root, after);
+		int created = 0;
+		for (PersistentNode node : after.keySet()) {
+			if (!before.containsKey(node)) {
+				created++;
+			}
+		}
+		assertTrue(created <= 4 * maxHeight(t.size()));
+		assertEquals(sb.toString(), snapshot.toString());
+	}
+
+	@Test
+	public void testRandomVersions() {
+		Random random = new Random(17);
+		PersistentEditTree t = new PersistentEditTree();
+		StringBuilder current = new StringBuilder();
+		List<PersistentEditTree> versions = new ArrayList<PersistentEditTree>();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			if (current.length() > 0 && random.nextInt(3) == 0) {
+				int pos = random.nextInt(current.length());
+				assertEquals(current.charAt(pos), t.delete(pos));
+				current.deleteCharAt(pos);
+			} else {
+				int pos = random.nextInt(current.length() + 1);
+				char ch = (char) ('a' + random.nextInt(26));
+				t.add(ch, pos);
+				current.insert(pos, ch);
+			}
+			if (i % 100 == 0) {
+				versions.add(t.snapshot());
+				expected.add(current.toString());
+			}
+		}
+		for (int i = 0; i < versions.size(); i++) {
+			assertEquals(expected.get(i), versions.get(i).toString());
+		}
+		assertEquals(current.toString(), t.toString());
+		assertTrue(t.height() <= maxHeight(t.size()));
+	}
+
+	@Test
+	public void testFromEditTree() {
+		EditTree e = new EditTree("abcdefghij");
+		PersistentEditTree t = new PersistentEditTree(e);
+		assertEquals("abcdefghij", t.toString());
+		assertEquals(e.slowHeight(), t.height());
+	}
+
+	@Test
+	public void testThrowsIndexExceptions() {
+		PersistentEditTree t = new PersistentEditTree("abc");
+		try {
+			t.add('x', 4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.delete(3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.get(-1);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+}
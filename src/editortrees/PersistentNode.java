@@ -0,0 +1,138 @@
+package editortrees;
+
+/**
+ * An immutable node in a height-balanced binary tree with rank. Nodes are
+ * never changed after they are built, so any number of tree versions can share
+ * them; an edit builds new copies of just the nodes on its root-to-leaf path.
+ */
+final class PersistentNode {
+
+	final char data;
+	final PersistentNode left, right;
+	final int rank; // size of the left subtree
+	final int size;
+	final int height;
+
+	static final PersistentNode NULL_NODE = new PersistentNode();
+
+	private PersistentNode() {
+		this.data = '\0';
+		this.left = null;
+		this.right = null;
+		this.rank = 0;
+		this.size = 0;
+		this.height = 0;
+	}
+
+	PersistentNode(char data, PersistentNode left, PersistentNode right) {
+		this.data = data;
+		this.left = left;
+		this.right = right;
+		this.rank = left.size;
+		this.size = left.size + right.size + 1;
+		this.height = Math.max(left.height, right.height) + 1;
+	}
+
+	/**
+	 * Builds a balanced tree holding s[l..r], with the same shape the
+	 * EditTree(String) constructor builds.
+	 */
+	static PersistentNode buildTree(CharSequence s, int l, int r) {
+		if(l > r) {
+			return NULL_NODE;
+		}
+		int mid = (l + r) / 2;
+		return new PersistentNode(s.charAt(mid), buildTree(s, l, mid - 1), buildTree(s, mid + 1, r));
+	}
+
+	/**
+	 * Makes a node with the given data and subtrees, whose heights may differ
+	 * by at most 2, doing the single or double rotation needed to balance it.
+	 * Only new nodes are built; the subtrees passed in are untouched.
+	 */
+	static PersistentNode balance(char data, PersistentNode left, PersistentNode right) {
+		if(left.height > right.height + 1) {
+			if(left.left.height >= left.right.height) {
+				return new PersistentNode(left.data, left.left, new PersistentNode(data, left.right, right));
+			}
+			PersistentNode middle = left.right;
+			return new PersistentNode(middle.data, new PersistentNode(left.data, left.left, middle.left),
+					new PersistentNode(data, middle.right, right));
+		}
+		if(right.height > left.height + 1) {
+			if(right.right.height >= right.left.height) {
+				return new PersistentNode(right.data, new PersistentNode(data, left, right.left), right.right);
+			}
+			PersistentNode middle = right.left;
+			return new PersistentNode(middle.data, new PersistentNode(data, left, middle.left),
+					new PersistentNode(right.data, middle.right, right.right));
+		}
+		return new PersistentNode(data, left, right);
+	}
+
+	/**
+	 * @return a new version of this subtree with ch at position pos
+	 */
+	PersistentNode add(char ch, int pos) {
+		if(this == NULL_NODE) {
+			return new PersistentNode(ch, NULL_NODE, NULL_NODE);
+		}
+		if(pos <= this.rank) {
+			return balance(this.data, this.left.add(ch, pos), this.right);
+		}
+		return balance(this.data, this.left, this.right.add(ch, pos - this.rank - 1));
+	}
+
+	/**
+	 * @return a new version of this subtree without the character at pos. A
+	 *         node with two children is replaced by a copy of its in-order
+	 *         successor.
+	 */
+	PersistentNode delete(int pos) {
+		if(pos < this.rank) {
+			return balance(this.data, this.left.delete(pos), this.right);
+		}
+		if(pos > this.rank) {
+			return balance(this.data, this.left, this.right.delete(pos - this.rank - 1));
+		}
+		if(this.left == NULL_NODE) {
+			return this.right;
+		}
+		if(this.right == NULL_NODE) {
+			return this.left;
+		}
+		return balance(this.right.get(0), this.left, this.right.delete(0));
+	}
+
+	char get(int pos) {
+		PersistentNode current = this;
+		while(pos != current.rank) {
+			if(pos < current.rank) {
+				current = current.left;
+			}
+			else {
+				pos -= current.rank + 1;
+				current = current.right;
+			}
+		}
+		return current.data;
+	}
+
+	/**
+	 * Appends the characters at positions [from, to) of this subtree.
+	 */
+	void get(int from, int to, StringBuilder string) {
+		if(this == NULL_NODE || from >= to) {
+			return;
+		}
+		if(from < this.rank) {
+			this.left.get(from, Math.min(to, this.rank), string);
+		}
+		if(from <= this.rank && this.rank < to) {
+			string.append(this.data);
+		}
+		if(to > this.rank + 1) {
+			this.right.get(Math.max(from - this.rank - 1, 0), to - this.rank - 1, string);
+		}
+	}
+}
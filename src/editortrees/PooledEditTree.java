@@ -0,0 +1,503 @@
+package editortrees;
+
+import java.util.Arrays;
+
+import editortrees.Node.Code;
+
+/**
+ * A height-balanced binary tree with rank, with the same public API and the
+ * same shapes, ranks, balance codes and rotation counts as {@link EditTree},
+ * but with no Node objects at all. Node state lives in parallel primitive
+ * arrays indexed by an int node id; index 0 plays the role of the NULL_NODE.
+ * Deleted ids are kept on a free list threaded through the left array and are
+ * reused before the arrays grow, so edit-heavy workloads produce no garbage.
+ */
+public class PooledEditTree {
+
+	private static final int NULL_NODE = 0;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final byte SAME = 0;
+	private static final byte LEFT = 1;
+	private static final byte RIGHT = 2;
+
+	// Parallel node arrays. Slot 0 is the NULL_NODE and is never written, so
+	// its height is always 0.
+	private char[] data;
+	private int[] rank;
+	private int[] left;
+	private int[] right;
+	private byte[] height;
+	private byte[] balance;
+
+	private int root = NULL_NODE;
+	private int freeList = NULL_NODE;
+	private int used = 1; // slots [0, used) have been handed out at least once
+	private int size = 0;
+	private int count = 0;
+
+	/**
+	 * Construct an empty tree
+	 */
+	public PooledEditTree() {
+		this(INITIAL_CAPACITY);
+	}
+
+	private PooledEditTree(int capacity) {
+		this.data = new char[capacity];
+		this.rank = new int[capacity];
+		this.left = new int[capacity];
+		this.right = new int[capacity];
+		this.height = new byte[capacity];
+		this.balance = new byte[capacity];
+	}
+
+	/**
+	 * Construct a single-node tree whose element is ch
+	 *
+	 * @param ch
+	 */
+	public PooledEditTree(char ch) {
+		this();
+		add(ch);
+	}
+
+	/**
+	 * Make this tree be a copy of e, with the same shape and contents. Since
+	 * the nodes are just array slots, this copies the arrays.
+	 *
+	 * @param e
+	 */
+	public PooledEditTree(PooledEditTree e) {
+		this.data = Arrays.copyOf(e.data, e.used);
+		this.rank = Arrays.copyOf(e.rank, e.used);
+		this.left = Arrays.copyOf(e.left, e.used);
+		this.right = Arrays.copyOf(e.right, e.used);
+		this.height = Arrays.copyOf(e.height, e.used);
+		this.balance = Arrays.copyOf(e.balance, e.used);
+		this.root = e.root;
+		this.freeList = e.freeList;
+		this.used = e.used;
+		this.size = e.size;
+		this.count = e.count;
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time. The shape is the same
+	 * one EditTree(String) builds.
+	 *
+	 * @param s
+	 */
+	public PooledEditTree(String s) {
+		this(s.length() + 1);
+		this.root = buildTree(s, 0, s.length() - 1);
+		this.size = s.length();
+	}
+
+	private int buildTree(String s, int l, int r) {
+		if(l > r) {
+			return NULL_NODE;
+		}
+		int mid = (l + r) / 2;
+		int node = allocate(s.charAt(mid));
+		int leftChild = buildTree(s, l, mid - 1);
+		int rightChild = buildTree(s, mid + 1, r);
+		this.left[node] = leftChild;
+		this.right[node] = rightChild;
+		this.rank[node] = mid - l;
+		update(node);
+		return node;
+	}
+
+	/**
+	 * Hands out a fresh leaf id, reusing a freed one if possible.
+	 */
+	private int allocate(char ch) {
+		int node;
+		if(this.freeList != NULL_NODE) {
+			node = this.freeList;
+			this.freeList = this.left[node];
+		}
+		else {
+			if(this.used == this.data.length) {
+				grow();
+			}
+			node = this.used++;
+		}
+		this.data[node] = ch;
+		this.rank[node] = 0;
+		this.left[node] = NULL_NODE;
+		this.right[node] = NULL_NODE;
+		this.height[node] = 1;
+		this.balance[node] = SAME;
+		return node;
+	}
+
+	private void free(int node) {
+		this.left[node] = this.freeList;
+		this.freeList = node;
+	}
+
+	private void grow() {
+		int capacity = this.data.length * 2;
+		this.data = Arrays.copyOf(this.data, capacity);
+		this.rank = Arrays.copyOf(this.rank, capacity);
+		this.left = Arrays.copyOf(this.left, capacity);
+		this.right = Arrays.copyOf(this.right, capacity);
+		this.height = Arrays.copyOf(this.height, capacity);
+		this.balance = Arrays.copyOf(this.balance, capacity);
+	}
+
+	/**
+	 * return the string produced by an in-order traversal of this tree
+	 */
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder(this.size);
+		appendRange(this.root, 0, this.size, string);
+		return string.toString();
+	}
+
+	/**
+	 * @return the number of nodes in this tree
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param ch character to add to the end of this tree.
+	 */
+	public void add(char ch) {
+		add(ch, this.size);
+	}
+
+	/**
+	 * @param ch  character to add
+	 * @param pos character added in this in-order position. Valid positions
+	 *            range from 0 to the size of the tree, inclusive.
+	 * @throws IndexOutOfBoundsException if pos is negative or too large for this
+	 *                                   tree.
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		this.root = add(this.root, ch, pos);
+		this.size++;
+	}
+
+	private int add(int node, char ch, int pos) {
+		if(node == NULL_NODE) {
+			return allocate(ch);
+		}
+		// The recursive call may grow the arrays, so the child is computed
+		// before the array to store it in is looked up.
+		if(pos <= this.rank[node]) {
+			this.rank[node]++;
+			int child = add(this.left[node], ch, pos);
+			this.left[node] = child;
+		}
+		else {
+			int child = add(this.right[node], ch, pos - this.rank[node] - 1);
+			this.right[node] = child;
+		}
+		return rebalance(node);
+	}
+
+	/**
+	 * @param pos position in the tree
+	 * @return the character at that position
+	 * @throws IndexOutOfBoundsException if pos is negative or too big.
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		int node = this.root;
+		while(pos != this.rank[node]) {
+			if(pos < this.rank[node]) {
+				node = this.left[node];
+			}
+			else {
+				pos -= this.rank[node] + 1;
+				node = this.right[node];
+			}
+		}
+		return this.data[node];
+	}
+
+	/**
+	 * Operates in O(log n + length).
+	 *
+	 * @param pos    location of the beginning of the string to retrieve
+	 * @param length length of the string to retrieve
+	 * @return string of length that starts in position pos
+	 * @throws IndexOutOfBoundsException unless both pos and pos+length-1 are
+	 *                                   legitimate indexes within this tree.
+	 */
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		if(pos < 0 || length < 0 || pos + length > this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		StringBuilder string = new StringBuilder(length);
+		appendRange(this.root, pos, pos + length, string);
+		return string.toString();
+	}
+
+	/**
+	 * Appends the characters at positions [from, to) of the subtree at node.
+	 */
+	private void appendRange(int node, int from, int to, StringBuilder string) {
+		while(node != NULL_NODE && from < to) {
+			int r = this.rank[node];
+			if(from < r) {
+				appendRange(this.left[node], from, Math.min(to, r), string);
+			}
+			if(from <= r && r < to) {
+				string.append(this.data[node]);
+			}
+			// Loop on the right subtree instead of recursing.
+			from = Math.max(from - r - 1, 0);
+			to = to - r - 1;
+			node = this.right[node];
+		}
+	}
+
+	/**
+	 * @param pos position of character to delete from this tree
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		if(pos < 0 || pos >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+		char value = get(pos);
+		this.root = delete(this.root, pos);
+		this.size--;
+		return value;
+	}
+
+	private int delete(int node, int pos) {
+		if(pos < this.rank[node]) {
+			this.rank[node]--;
+			this.left[node] = delete(this.left[node], pos);
+		}
+		else if(pos > this.rank[node]) {
+			this.right[node] = delete(this.right[node], pos - this.rank[node] - 1);
+		}
+		else if(this.left[node] == NULL_NODE || this.right[node] == NULL_NODE) {
+			int child = this.left[node] == NULL_NODE ? this.right[node] : this.left[node];
+			free(node);
+			return child;
+		}
+		else {
+			// Two children: take over the in-order successor's character and
+			// delete the successor instead.
+			int successor = this.right[node];
+			while(this.left[successor] != NULL_NODE) {
+				successor = this.left[successor];
+			}
+			this.data[node] = this.data[successor];
+			this.right[node] = delete(this.right[node], 0);
+		}
+		return rebalance(node);
+	}
+
+	/**
+	 * Updates node's height and balance code and, if it is out of balance,
+	 * does the single or double rotation that fixes it. A single rotation is
+	 * preferred when either would do.
+	 *
+	 * @return the new root of this subtree
+	 */
+	private int rebalance(int node) {
+		int l = this.left[node];
+		int r = this.right[node];
+		if(this.height[l] - this.height[r] > 1) {
+			if(this.height[this.left[l]] < this.height[this.right[l]]) {
+				this.left[node] = rotateLeft(l);
+			}
+			return rotateRight(node);
+		}
+		if(this.height[r] - this.height[l] > 1) {
+			if(this.height[this.right[r]] < this.height[this.left[r]]) {
+				this.right[node] = rotateRight(r);
+			}
+			return rotateLeft(node);
+		}
+		update(node);
+		return node;
+	}
+
+	private int rotateLeft(int parent) {
+		int child = this.right[parent];
+		this.right[parent] = this.left[child];
+		this.left[child] = parent;
+		this.rank[child] += this.rank[parent] + 1;
+		update(parent);
+		update(child);
+		this.count++;
+		return child;
+	}
+
+	private int rotateRight(int parent) {
+		int child = this.left[parent];
+		this.left[parent] = this.right[child];
+		this.right[child] = parent;
+		this.rank[parent] -= this.rank[child] + 1;
+		update(parent);
+		update(child);
+		this.count++;
+		return child;
+	}
+
+	private void update(int node) {
+		int lh = this.height[this.left[node]];
+		int rh = this.height[this.right[node]];
+		this.height[node] = (byte) (Math.max(lh, rh) + 1);
+		this.balance[node] = lh > rh ? LEFT : lh < rh ? RIGHT : SAME;
+	}
+
+	/**
+	 * @return The string of elements and ranks, given in a pre-order traversal
+	 *         of the tree.
+	 */
+	public String toRankString() {
+		StringBuilder string = new StringBuilder();
+		preOrder(this.root, string, false);
+		return "[" + string + "]";
+	}
+
+	/**
+	 * @return The string of elements, ranks and balance codes, given in a
+	 *         pre-order traversal of the tree.
+	 */
+	public String toDebugString() {
+		StringBuilder string = new StringBuilder();
+		preOrder(this.root, string, true);
+		return "[" + string + "]";
+	}
+
+	private void preOrder(int node, StringBuilder string, boolean withCodes) {
+		if(node == NULL_NODE) {
+			return;
+		}
+		if(string.length() > 0) {
+			string.append(", ");
+		}
+		string.append(this.data[node]);
+		string.append(this.rank[node]);
+		if(withCodes) {
+			string.append(code(node));
+		}
+		preOrder(this.left[node], string, withCodes);
+		preOrder(this.right[node], string, withCodes);
+	}
+
+	private Code code(int node) {
+		switch(this.balance[node]) {
+		case LEFT:
+			return Code.LEFT;
+		case RIGHT:
+			return Code.RIGHT;
+		default:
+			return Code.SAME;
+		}
+	}
+
+	/**
+	 * @return number of rotations since this tree was created.
+	 */
+	public int totalRotationCount() {
+		return this.count;
+	}
+
+	/**
+	 * Relies on correct balance codes, so it is O(log n).
+	 *
+	 * @return the height of this tree
+	 */
+	public int fastHeight() {
+		int h = -1;
+		int node = this.root;
+		while(node != NULL_NODE) {
+			h++;
+			node = this.balance[node] == RIGHT ? this.right[node] : this.left[node];
+		}
+		return h;
+	}
+
+	public int slowHeight() {
+		return slowHeight(this.root);
+	}
+
+	private int slowHeight(int node) {
+		if(node == NULL_NODE) {
+			return -1;
+		}
+		return Math.max(slowHeight(this.left[node]), slowHeight(this.right[node])) + 1;
+	}
+
+	public int slowSize() {
+		return slowSize(this.root);
+	}
+
+	private int slowSize(int node) {
+		if(node == NULL_NODE) {
+			return 0;
+		}
+		return slowSize(this.left[node]) + slowSize(this.right[node]) + 1;
+	}
+
+	/**
+	 * @return True iff each node's rank correctly equals its left subtree's
+	 *         size.
+	 */
+	public boolean ranksMatchLeftSubtreeSize() {
+		return checkRanks(this.root) >= 0;
+	}
+
+	/**
+	 * @return the size of the subtree, or -1 if some rank in it is wrong
+	 */
+	private int checkRanks(int node) {
+		if(node == NULL_NODE) {
+			return 0;
+		}
+		int l = checkRanks(this.left[node]);
+		int r = checkRanks(this.right[node]);
+		if(l < 0 || r < 0 || l != this.rank[node]) {
+			return -1;
+		}
+		return l + r + 1;
+	}
+
+	/**
+	 * @return True iff each node's balance code is correct.
+	 */
+	public boolean balanceCodesAreCorrect() {
+		return checkBalanceCodes(this.root) != -2;
+	}
+
+	/**
+	 * @return the height of the subtree (leaves are 0), or -2 if some balance
+	 *         code in it is wrong
+	 */
+	private int checkBalanceCodes(int node) {
+		if(node == NULL_NODE) {
+			return -1;
+		}
+		int l = checkBalanceCodes(this.left[node]);
+		int r = checkBalanceCodes(this.right[node]);
+		if(l == -2 || r == -2) {
+			return -2;
+		}
+		byte expected = l > r ? LEFT : l < r ? RIGHT : SAME;
+		if(this.balance[node] != expected) {
+			return -2;
+		}
+		return Math.max(l, r) + 1;
+	}
+}
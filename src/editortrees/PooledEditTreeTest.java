@@ -0,0 +1,168 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.PooledEditTree}. Expected debug strings are the
+ * same ones the milestone tests expect from EditTree.
+ */
+public class PooledEditTreeTest {
+
+	private PooledEditTree makeBigTreeFromSlides() {
+		// Level-order insertion so no rotations.
+		PooledEditTree t = new PooledEditTree();
+		char[] chars = { 'H', 'C', 'U', 'A', 'F', 'K', 'W', 'B', 'E', 'G', 'J', 'P', 'V', 'Y', 'D', 'I', 'M', 'R',
+				'X', 'L', 'N', 'Q', 'S' };
+		int[] positions = { 0, 0, 2, 0, 2, 4, 6, 1, 3, 5, 7, 9, 11, 13, 3, 8, 11, 13, 17, 11, 13, 15, 17 };
+		for (int i = 0; i < chars.length; i++) {
+			t.add(chars[i], positions[i]);
+		}
+		assertEquals(0, t.totalRotationCount());
+		return t;
+	}
+
+	@Test
+	public void testEmptyAndSingle() {
+		PooledEditTree t = new PooledEditTree();
+		assertEquals("", t.toString());
+		assertEquals("[]", t.toDebugString());
+		assertEquals(-1, t.fastHeight());
+		t = new PooledEditTree('x');
+		assertEquals("x", t.toString());
+		assertEquals("[x0=]", t.toDebugString());
+	}
+
+	@Test
+	public void testRotationsOnAdd() {
+		PooledEditTree t = new PooledEditTree();
+		t.add('a');
+		t.add('b');
+		t.add('c');
+		assertEquals("[b1=, a0=, c0=]", t.toDebugString());
+		assertEquals(1, t.totalRotationCount());
+		t = new PooledEditTree();
+		t.add('c');
+		t.add('a', 0);
+		t.add('b', 1);
+		assertEquals("[b1=, a0=, c0=]", t.toDebugString());
+		assertEquals(2, t.totalRotationCount());
+	}
+
+	@Test
+	public void testDeletesFromSlides() {
+		PooledEditTree t = makeBigTreeFromSlides();
+		assertEquals("ABCDEFGHIJKLMNPQRSUVWXY", t.toString());
+		assertEquals(
+				"[H7\\, C2\\, A0\\, B0=, F2/, E1/, D0=, G0=, U10/, K2\\, J1/, I0=, P3=, M1=, L0=, N0=, R1=, Q0=, S0=, W1\\, V0=, Y1/, X0=]",
+				t.toDebugString());
+		assertEquals('I', t.delete(8));
+		assertEquals(
+				"[H7\\, C2\\, A0\\, B0=, F2/, E1/, D0=, G0=, U9/, P5/, K1\\, J0=, M1=, L0=, N0=, R1=, Q0=, S0=, W1\\, V0=, Y1/, X0=]",
+				t.toDebugString());
+
+		t = makeBigTreeFromSlides();
+		assertEquals('G', t.delete(6));
+		assertEquals(
+				"[K9=, H6/, C2=, A0\\, B0=, E1=, D0=, F0=, J1/, I0=, U7=, P3=, M1=, L0=, N0=, R1=, Q0=, S0=, W1\\, V0=, Y1/, X0=]",
+				t.toDebugString());
+		// One single rotation at F and one double rotation at H.
+		assertEquals(3, t.totalRotationCount());
+		assertEquals('I', t.delete(7));
+		assertEquals(
+				"[K8=, C2\\, A0\\, B0=, H3/, E1=, D0=, F0=, J0=, U7=, P3=, M1=, L0=, N0=, R1=, Q0=, S0=, W1\\, V0=, Y1/, X0=]",
+				t.toDebugString());
+	}
+
+	@Test
+	public void testAddsMatchEditTree() {
+		Random random = new Random(50);
+		EditTree expected = new EditTree();
+		PooledEditTree t = new PooledEditTree();
+		for (int i = 0; i < 2000; i++) {
+			char ch = (char) ('a' + random.nextInt(26));
+			int pos = random.nextInt(i + 1);
+			expected.add(ch, pos);
+			t.add(ch, pos);
+		}
+		assertEquals(expected.toDebugString(), t.toDebugString());
+		assertEquals(expected.totalRotationCount(), t.totalRotationCount());
+		assertEquals(expected.fastHeight(), t.fastHeight());
+	}
+
+	@Test
+	public void testRandomEditsReuseFreedNodes() {
+		Random random = new Random(17);
+		PooledEditTree t = new PooledEditTree();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			if (expected.length() > 0 && random.nextBoolean()) {
+				int pos = random.nextInt(expected.length());
+				assertEquals(expected.charAt(pos), t.delete(pos));
+				expected.deleteCharAt(pos);
+			} else {
+				int pos = random.nextInt(expected.length() + 1);
+				char ch = (char) ('a' + random.nextInt(26));
+				t.add(ch, pos);
+				expected.insert(pos, ch);
+			}
+		}
+		assertEquals(expected.toString(), t.toString());
+		assertEquals(expected.length(), t.slowSize());
+		assertTrue(t.ranksMatchLeftSubtreeSize());
+		assertTrue(t.balanceCodesAreCorrect());
+		assertEquals(t.slowHeight(), t.fastHeight());
+		int mid = expected.length() / 2;
+		assertEquals(expected.substring(mid / 2, mid), t.get(mid / 2, mid - mid / 2));
+	}
+
+	@Test
+	public void testConstructors() {
+		PooledEditTree t = new PooledEditTree("abcdefghijkl");
+		assertEquals(new EditTree("abcdefghijkl").toRankString(), t.toRankString());
+		assertTrue(t.balanceCodesAreCorrect());
+		PooledEditTree copy = new PooledEditTree(t);
+		copy.add('z', 0);
+		assertEquals("abcdefghijkl", t.toString());
+		assertEquals("zabcdefghijkl", copy.toString());
+	}
+
+	@Test
+	public void testEmptyTreeIsBalanced() {
+		assertTrue(new PooledEditTree().balanceCodesAreCorrect());
+		assertTrue(new PooledEditTree("").balanceCodesAreCorrect());
+		PooledEditTree t = new PooledEditTree("ab");
+		t.delete(1);
+		t.delete(0);
+		assertTrue(t.balanceCodesAreCorrect());
+		assertTrue(t.ranksMatchLeftSubtreeSize());
+	}
+
+	@Test
+	public void testThrowsIndexExceptions() {
+		PooledEditTree t = new PooledEditTree("abc");
+		try {
+			t.add('x', 4);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.delete(3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		try {
+			t.get(1, 3);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package editortrees;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A tree that one writer edits while any number of other threads read it
+ * without ever locking. It is built from the immutable nodes of
+ * PersistentEditTree: the writer's edits copy the nodes they change into a
+ * new version, and the root of the finished version is published through a
+ * volatile field. A reader takes whatever root is published, which is a
+ * complete, balanced tree that no later edit can touch, so it can never see a
+ * half-done rotation.
+ * 
+ * Edits are published as soon as they are done, unless the writer groups
+ * them with beginBatch() and endBatch(); then readers see the whole batch at
+ * once, or none of it.
+ */
+public class SnapshotEditTree {
+
+	private volatile PersistentNode published;
+	// The version the writer is building; only touched while holding writer.
+	private PersistentNode working;
+	private final ReentrantLock writer = new ReentrantLock();
+	private int batchDepth = 0;
+
+	/**
+	 * Construct an empty tree
+	 */
+	public SnapshotEditTree() {
+		this("");
+	}
+
+	/**
+	 * Create a tree whose toString is s, in O(N) time.
+	 * 
+	 * @param s
+	 */
+	public SnapshotEditTree(String s) {
+		this.working = PersistentNode.buildTree(s, 0, s.length() - 1);
+		this.published = this.working;
+	}
+
+	/**
+	 * O(1) and lock-free.
+	 * 
+	 * @return the last published version, which later edits never change
+	 */
+	public PersistentEditTree snapshot() {
+		return new PersistentEditTree(this.published);
+	}
+
+	/**
+	 * @return the number of characters in the last published version
+	 */
+	public int size() {
+		return this.published.size;
+	}
+
+	/**
+	 * Reads the last published version. To read several things from one
+	 * version, take a snapshot() and read them from it instead.
+	 */
+	public char get(int pos) throws IndexOutOfBoundsException {
+		return snapshot().get(pos);
+	}
+
+	public String get(int pos, int length) throws IndexOutOfBoundsException {
+		return snapshot().get(pos, length);
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	/**
+	 * Starts a batch: the calling thread becomes the writer until the matching
+	 * endBatch(), and none of its edits are published before then. Batches
+	 * may nest.
+	 */
+	public void beginBatch() {
+		this.writer.lock();
+		this.batchDepth++;
+	}
+
+	/**
+	 * Ends a batch, publishing all of its edits at once if it is the outermost.
+	 * 
+	 * @throws IllegalMonitorStateException if this thread has no open batch
+	 */
+	public void endBatch() {
+		if(!this.writer.isHeldByCurrentThread() || this.batchDepth == 0) {
+			throw new IllegalMonitorStateException();
+		}
+		if(--this.batchDepth == 0) {
+			this.published = this.working;
+		}
+		this.writer.unlock();
+	}
+
+	public void add(char ch) {
+		beginBatch();
+		try {
+			add(ch, this.working.size);
+		}
+		finally {
+			endBatch();
+		}
+	}
+
+	/**
+	 * @param ch  character to add
+	 * @param pos position in the version being written, which may include
+	 *            unpublished edits of the current batch
+	 * @throws IndexOutOfBoundsException if pos is negative or too large
+	 */
+	public void add(char ch, int pos) throws IndexOutOfBoundsException {
+		beginBatch();
+		try {
+			if(pos < 0 || pos > this.working.size) {
+				throw new IndexOutOfBoundsException();
+			}
+			this.working = this.working.add(ch, pos);
+		}
+		finally {
+			endBatch();
+		}
+	}
+
+	/**
+	 * @param pos position in the version being written
+	 * @return the character that is deleted
+	 * @throws IndexOutOfBoundsException
+	 */
+	public char delete(int pos) throws IndexOutOfBoundsException {
+		beginBatch();
+		try {
+			if(pos < 0 || pos >= this.working.size) {
+				throw new IndexOutOfBoundsException();
+			}
+			char value = this.working.get(pos);
+			this.working = this.working.delete(pos);
+			return value;
+		}
+		finally {
+			endBatch();
+		}
+	}
+}
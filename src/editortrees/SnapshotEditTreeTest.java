@@ -0,0 +1,115 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.SnapshotEditTree}
+ */
+public class SnapshotEditTreeTest {
+
+	private static boolean allSame(String s) {
+		for (int i = 1; i < s.length(); i++) {
+			if (s.charAt(i) != s.charAt(0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Test
+	public void testEditsArePublished() {
+		SnapshotEditTree t = new SnapshotEditTree("bd");
+		t.add('a', 0);
+		t.add('c', 2);
+		t.add('e');
+		assertEquals("abcde", t.toString());
+		assertEquals('b', t.delete(1));
+		assertEquals("acde", t.toString());
+		assertEquals("cd", t.get(1, 2));
+		assertEquals('e', t.get(3));
+		assertEquals(4, t.size());
+	}
+
+	@Test
+	public void testBatchIsPublishedAtOnce() {
+		SnapshotEditTree t = new SnapshotEditTree("hello");
+		PersistentEditTree before = t.snapshot();
+		t.beginBatch();
+		t.add(' ');
+		t.beginBatch();
+		t.add('!');
+		t.endBatch();
+		t.delete(0);
+		t.add('H', 0);
+		assertEquals("hello", t.toString());
+		t.endBatch();
+		assertEquals("Hello !", t.toString());
+		assertEquals("hello", before.toString());
+		try {
+			t.endBatch();
+			fail("Did not throw IllegalMonitorStateException");
+		} catch (IllegalMonitorStateException e) {
+			// success
+		}
+	}
+
+	/**
+	 * Each batch turns one run of the same letter into the next letter, so a
+	 * reader that saw part of a batch would find two letters at once.
+	 */
+	@Test
+	public void testReadersNeverSeePartOfABatch() throws InterruptedException {
+		final int length = 50;
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append('a');
+		}
+		final SnapshotEditTree t = new SnapshotEditTree(sb.toString());
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		Thread[] readers = new Thread[3];
+		for (int r = 0; r < readers.length; r++) {
+			readers[r] = new Thread() {
+				@Override
+				public void run() {
+					while (!done.get()) {
+						String s = t.toString();
+						if (s.length() != length || !allSame(s)) {
+							failure.set(s);
+						}
+					}
+				}
+			};
+			readers[r].start();
+		}
+		Random random = new Random(5);
+		for (int round = 0; round < 2000; round++) {
+			char next = (char) ('a' + (round + 1) % 26);
+			t.beginBatch();
+			for (int i = 0; i < length; i++) {
+				int pos = random.nextInt(length);
+				t.delete(pos);
+				t.add(next, pos);
+			}
+			for (int i = 0; i < length; i++) {
+				t.delete(i);
+				t.add(next, i);
+			}
+			t.endBatch();
+		}
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (failure.get() != null) {
+			fail("Saw part of a batch: " + failure.get());
+		}
+	}
+}
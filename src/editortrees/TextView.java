@@ -0,0 +1,74 @@
+package editortrees;
+
+/**
+ * A CharSequence over part of an EditTree, so that java.util.regex and other
+ * code written against CharSequence can read the tree without copying it into
+ * a String first. charAt() keeps a Cursor at the last position it read, so
+ * reading forward or backward a few characters at a time, as a regex matcher
+ * does, costs O(1) amortized per character instead of O(log n). subSequence()
+ * makes another view of the same tree and copies nothing.
+ *
+ * Like a Cursor, a view must not be used after the tree is edited.
+ */
+final class TextView implements CharSequence {
+
+	// Farther than this, seeking from the root beats stepping the cursor.
+	private static final int MAX_STEPS = 32;
+
+	private final EditTree tree;
+	private final int start;
+	private final int end;
+	private Cursor cursor;
+
+	TextView(EditTree tree, int start, int end) {
+		this.tree = tree;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	public int length() {
+		return this.end - this.start;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if(index < 0 || index >= length()) {
+			throw new IndexOutOfBoundsException();
+		}
+		int pos = this.start + index;
+		if(this.cursor == null) {
+			this.cursor = this.tree.cursor(pos);
+			return this.cursor.peek();
+		}
+		int distance = pos - this.cursor.position();
+		if(distance > MAX_STEPS || distance < -MAX_STEPS) {
+			this.cursor.seek(pos);
+		}
+		else {
+			for(; distance > 0; distance--) {
+				this.cursor.next();
+			}
+			for(; distance < 0; distance++) {
+				this.cursor.previous();
+			}
+		}
+		return this.cursor.peek();
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if(start < 0 || end > length() || start > end) {
+			throw new IndexOutOfBoundsException();
+		}
+		return new TextView(this.tree, this.start + start, this.start + end);
+	}
+
+	@Override
+	public String toString() {
+		if(this.start == this.end) {
+			return "";
+		}
+		return this.tree.get(this.start, length());
+	}
+}
@@ -0,0 +1,77 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditTree#asCharSequence()}
+ */
+public class TextViewTest {
+
+	@Test
+	public void testCharAtAndSubSequence() {
+		EditTree t = new EditTree("hello, world");
+		CharSequence view = t.asCharSequence();
+		assertEquals(12, view.length());
+		assertEquals('w', view.charAt(7));
+		assertEquals('h', view.charAt(0));
+		assertEquals('d', view.charAt(11));
+		CharSequence world = view.subSequence(7, 12);
+		assertEquals("world", world.toString());
+		assertEquals("orl", world.subSequence(1, 4).toString());
+		assertEquals("", world.subSequence(2, 2).toString());
+		assertEquals("hello, world", view.toString());
+		try {
+			world.charAt(5);
+			fail("Did not throw IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+	}
+
+	@Test
+	public void testRandomAccess() {
+		Random random = new Random(16);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append((char) ('a' + random.nextInt(26)));
+		}
+		String s = sb.toString();
+		CharSequence view = new EditTree(s).asCharSequence().subSequence(100, 4900);
+		String expected = s.substring(100, 4900);
+		int index = 0;
+		for (int i = 0; i < 20000; i++) {
+			int move = random.nextInt(10);
+			if (move == 0) {
+				index = random.nextInt(expected.length());
+			} else {
+				index = Math.max(0, Math.min(expected.length() - 1, index + random.nextInt(11) - 4));
+			}
+			assertEquals(expected.charAt(index), view.charAt(index));
+		}
+	}
+
+	@Test
+	public void testRegex() {
+		EditTree t = new EditTree();
+		for (int i = 0; i < 1000; i++) {
+			t.add("line " + i + "\n");
+		}
+		Matcher matcher = Pattern.compile("line (\\d*7)\\n").matcher(t.asCharSequence());
+		int count = 0;
+		while (matcher.find()) {
+			assertTrue(matcher.group(1).endsWith("7"));
+			count++;
+		}
+		assertEquals(100, count);
+		assertFalse(Pattern.compile("line 1000").matcher(t.asCharSequence()).find());
+	}
+}
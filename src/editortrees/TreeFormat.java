@@ -0,0 +1,221 @@
+package editortrees;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+import editortrees.Node.Code;
+
+/**
+ * The binary format EditTree.writeBinary() and readBinary() use, which keeps
+ * the exact shape of a tree and its rotation count, not just its text:
+ *
+ * <pre>
+ * magic     4 bytes  "EDTR"
+ * version   1 byte   VERSION
+ * size      4 bytes  number of characters
+ * rotations 4 bytes  totalRotationCount()
+ * nodes              one per character, in pre-order:
+ *   data    2 bytes  the character
+ *   rank    varint   rank * 4 + the ordinal of the balance code
+ * crc       4 bytes  CRC32 of everything before it
+ * </pre>
+ *
+ * Integers are big-endian, and varints are 7 bits a byte, low bits first,
+ * with the high bit set on every byte but the last. A node's rank is the size
+ * of its left subtree, so with the size of the whole tree it fixes the size of
+ * every subtree and hence the shape; reading is O(n) with no rebalancing, and
+ * only checks that the balance codes are right. Reading never takes a byte
+ * past the checksum from the channel, so a saved tree can be followed by
+ * other data, such as another saved tree.
+ */
+final class TreeFormat {
+
+	static final int MAGIC = ('E' << 24) | ('D' << 16) | ('T' << 8) | 'R';
+	static final byte VERSION = 1;
+	private static final int BUFFER = 1 << 16;
+	private static final int MAX_NODE = 2 + 5;
+	private static final int MIN_NODE = 2 + 1;
+	// Deeper than any AVL tree with fewer than 2^31 nodes.
+	private static final int MAX_DEPTH = 64;
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+	private final CRC32 crc = new CRC32();
+	private int checked; // the bytes of buffer before this are in crc
+	// At least this many bytes of the saved tree are left from the buffer's
+	// position on, so the channel can be read this far without overshooting.
+	private long left = 13 + 4;
+
+	private TreeFormat() {
+	}
+
+	static void write(Node root, int size, int rotations, WritableByteChannel channel) throws IOException {
+		new TreeFormat().writeTree(root, size, rotations, channel);
+	}
+
+	static EditTree read(ReadableByteChannel channel) throws IOException {
+		return new TreeFormat().readTree(channel);
+	}
+
+	private void writeTree(Node root, int size, int rotations, WritableByteChannel channel) throws IOException {
+		this.buffer.putInt(MAGIC);
+		this.buffer.put(VERSION);
+		this.buffer.putInt(size);
+		this.buffer.putInt(rotations);
+		Node[] stack = new Node[root.height + 1];
+		int depth = 0;
+		if(root != Node.NULL_NODE) {
+			stack[depth++] = root;
+		}
+		while(depth > 0) {
+			Node node = stack[--depth];
+			if(this.buffer.remaining() < MAX_NODE) {
+				drain(channel);
+			}
+			this.buffer.putChar(node.data);
+			long value = ((long) node.rank << 2) | node.balance.ordinal();
+			while(value >= 0x80) {
+				this.buffer.put((byte) (value | 0x80));
+				value >>>= 7;
+			}
+			this.buffer.put((byte) value);
+			if(node.right != Node.NULL_NODE) {
+				stack[depth++] = node.right;
+			}
+			if(node.left != Node.NULL_NODE) {
+				stack[depth++] = node.left;
+			}
+		}
+		if(this.buffer.remaining() < 4) {
+			drain(channel);
+		}
+		this.crc.update(this.buffer.array(), 0, this.buffer.position());
+		this.buffer.putInt((int) this.crc.getValue());
+		this.buffer.flip();
+		while(this.buffer.hasRemaining()) {
+			channel.write(this.buffer);
+		}
+	}
+
+	private void drain(WritableByteChannel channel) throws IOException {
+		this.crc.update(this.buffer.array(), 0, this.buffer.position());
+		this.buffer.flip();
+		while(this.buffer.hasRemaining()) {
+			channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	private EditTree readTree(ReadableByteChannel channel) throws IOException {
+		this.buffer.flip();
+		need(13, channel);
+		if(this.buffer.remaining() < 13) {
+			throw new EOFException();
+		}
+		if(this.buffer.getInt() != MAGIC) {
+			throw new IOException("not a saved EditTree");
+		}
+		byte version = this.buffer.get();
+		if(version != VERSION) {
+			throw new IOException("unknown EditTree format version " + version);
+		}
+		int size = this.buffer.getInt();
+		int rotations = this.buffer.getInt();
+		if(size < 0) {
+			throw new IOException("corrupt EditTree: size " + size);
+		}
+		this.left = (long) MIN_NODE * size + 4;
+		Node root;
+		int expected;
+		try {
+			root = readSubtree(size, 0, channel);
+			check();
+			need(4, channel);
+			expected = this.buffer.getInt();
+		}
+		catch(BufferUnderflowException e) {
+			throw new EOFException();
+		}
+		if(expected != (int) this.crc.getValue()) {
+			throw new IOException("corrupt EditTree: checksum does not match");
+		}
+		EditTree tree = new EditTree(root, size);
+		tree.setRotationCount(rotations);
+		return tree;
+	}
+
+	/**
+	 * Reads a subtree of size nodes, in pre-order, checking that its ranks
+	 * fit and its balance codes are right.
+	 */
+	private Node readSubtree(int size, int depth, ReadableByteChannel channel) throws IOException {
+		if(size == 0) {
+			return Node.NULL_NODE;
+		}
+		if(depth == MAX_DEPTH) {
+			throw new IOException("corrupt EditTree: too deep");
+		}
+		need(MAX_NODE, channel);
+		Node node = new Node(this.buffer.getChar());
+		long value = 0;
+		for(int shift = 0;; shift += 7) {
+			byte b = this.buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if(b >= 0 || shift == 28) {
+				break;
+			}
+		}
+		long rank = value >>> 2;
+		int code = (int) (value & 3);
+		if(rank >= size || code > Code.RIGHT.ordinal()) {
+			throw new IOException("corrupt EditTree: node " + value + " in subtree of " + size);
+		}
+		this.left -= MIN_NODE;
+		node.left = readSubtree((int) rank, depth + 1, channel);
+		node.right = readSubtree(size - 1 - (int) rank, depth + 1, channel);
+		node.rank = (int) rank;
+		node.leftsize = node.rank;
+		node.rightsize = size - 1 - node.rank;
+		node.height = Math.max(node.left.height, node.right.height) + 1;
+		node.restoreBalance();
+		if(node.balance.ordinal() != code || Math.abs(node.left.height - node.right.height) > 1) {
+			throw new IOException("corrupt EditTree: wrong balance code");
+		}
+		node.countNewlines();
+		return node;
+	}
+
+	/**
+	 * Adds the bytes read since the last call to the checksum.
+	 */
+	private void check() {
+		this.crc.update(this.buffer.array(), this.checked, this.buffer.position() - this.checked);
+		this.checked = this.buffer.position();
+	}
+
+	/**
+	 * Reads from channel until the next count bytes are in the buffer, or
+	 * the channel runs out, but never more than the bytes known to be left. A
+	 * node near the end of the input may be shorter than MAX_NODE, so running
+	 * out is only an error if a read then runs past the end of the buffer.
+	 */
+	private void need(int count, ReadableByteChannel channel) throws IOException {
+		if(this.buffer.remaining() >= count) {
+			return;
+		}
+		check();
+		this.buffer.compact();
+		this.checked = 0;
+		this.buffer.limit((int) Math.min(this.buffer.capacity(), this.left));
+		while(this.buffer.position() < Math.min(count, this.buffer.limit())) {
+			if(channel.read(this.buffer) < 0) {
+				break;
+			}
+		}
+		this.buffer.flip();
+	}
+}
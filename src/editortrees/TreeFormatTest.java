@@ -0,0 +1,120 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link editortrees.EditTree#writeBinary} and
+ * {@link editortrees.EditTree#readBinary}
+ */
+public class TreeFormatTest {
+
+	private static byte[] save(EditTree t) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		t.writeBinary(Channels.newChannel(out));
+		return out.toByteArray();
+	}
+
+	private static EditTree load(byte[] bytes) throws IOException {
+		return EditTree.readBinary(Channels.newChannel(new ByteArrayInputStream(bytes)));
+	}
+
+	private static void assertRoundTrip(EditTree t) throws IOException {
+		EditTree copy = load(save(t));
+		assertEquals(t.toDebugString(), copy.toDebugString());
+		assertEquals(t.totalRotationCount(), copy.totalRotationCount());
+		assertEquals(t.size(), copy.size());
+		assertEquals(t.lineCount(), copy.lineCount());
+		assertEquals(t.hash(0, t.size()), copy.hash(0, copy.size()));
+		assertTrue(copy.ranksMatchLeftSubtreeSize());
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		assertRoundTrip(new EditTree());
+		assertRoundTrip(new EditTree('a'));
+		assertRoundTrip(new EditTree("a string\nwith two lines \ud83d\ude00"));
+		EditTree t = new EditTree();
+		for (char ch = 'a'; ch <= 'z'; ch++) {
+			t.add(ch, 0);
+		}
+		t.delete(5);
+		assertRoundTrip(t);
+	}
+
+	@Test
+	public void testSameEditsAfterLoading() throws IOException {
+		Random random = new Random(23);
+		EditTree t = new EditTree();
+		for (int i = 0; i < 200000; i++) {
+			t.add((char) ('a' + random.nextInt(26)), random.nextInt(t.size() + 1));
+		}
+		assertRoundTrip(t);
+		EditTree copy = load(save(t));
+		for (int i = 0; i < 1000; i++) {
+			int pos = random.nextInt(t.size());
+			t.delete(pos);
+			copy.delete(pos);
+			t.add('x', pos / 2);
+			copy.add('x', pos / 2);
+		}
+		assertEquals(t.totalRotationCount(), copy.totalRotationCount());
+		assertEquals(t.toDebugString(), copy.toDebugString());
+	}
+
+	@Test
+	public void testReadsNoFurtherThanTheTree() throws IOException {
+		Random random = new Random(26);
+		EditTree first = new EditTree();
+		for (int i = 0; i < 100000; i++) {
+			first.add((char) ('a' + random.nextInt(26)), random.nextInt(first.size() + 1));
+		}
+		EditTree second = new EditTree("second\ntree");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		WritableByteChannel channel = Channels.newChannel(out);
+		first.writeBinary(channel);
+		second.writeBinary(channel);
+		new EditTree().writeBinary(channel);
+		out.write(42);
+		InputStream in = new ByteArrayInputStream(out.toByteArray());
+		ReadableByteChannel input = Channels.newChannel(in);
+		assertEquals(first.toDebugString(), EditTree.readBinary(input).toDebugString());
+		assertEquals(second.toDebugString(), EditTree.readBinary(input).toDebugString());
+		assertEquals(0, EditTree.readBinary(input).size());
+		assertEquals(42, in.read());
+	}
+
+	@Test
+	public void testRejectsBadInput() throws IOException {
+		byte[] bytes = save(new EditTree("some text to save"));
+		byte[] truncated = new byte[bytes.length - 5];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		byte[] flipped = bytes.clone();
+		flipped[20] ^= 1;
+		byte[] magic = bytes.clone();
+		magic[0] = 'X';
+		byte[] version = bytes.clone();
+		version[4] = 99;
+		byte[][] bad = { truncated, flipped, magic, version, new byte[0] };
+		for (byte[] b : bad) {
+			try {
+				load(b);
+				fail("Did not throw IOException");
+			} catch (IOException e) {
+				// success
+			}
+		}
+	}
+}
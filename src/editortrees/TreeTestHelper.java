@@ -0,0 +1,188 @@
+package editortrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Checks and fixtures shared by the tests of the trees in this package.
+ */
+final class TreeTestHelper {
+
+	/**
+	 * Something every node keeps about its subtree, such as its size or its
+	 * number of newlines, for checkCounts() to recount.
+	 */
+	interface SubtreeCount {
+		/**
+		 * Checks what node keeps against the counts of its two subtrees.
+		 * 
+		 * @return the count for node's whole subtree
+		 */
+		int check(Node node, int left, int right);
+	}
+
+	static final SubtreeCount SIZES = new SubtreeCount() {
+		@Override
+		public int check(Node node, int left, int right) {
+			assertEquals(left, node.leftsize);
+			assertEquals(right, node.rightsize);
+			return left + right + 1;
+		}
+	};
+
+	static final SubtreeCount NEWLINES = new SubtreeCount() {
+		@Override
+		public int check(Node node, int left, int right) {
+			int count = left + right + (node.data == '\n' ? 1 : 0);
+			assertEquals(count, node.newlines);
+			return count;
+		}
+	};
+
+	private TreeTestHelper() {
+	}
+
+	/**
+	 * @return the greatest height an AVL tree of size nodes can have
+	 */
+	static int maxHeight(int size) {
+		return (int) Math.ceil(1.44 * Math.log(size + 2) / Math.log(2));
+	}
+
+	/**
+	 * Recounts count bottom up for every subtree of node, checking it against
+	 * what each node keeps.
+	 * 
+	 * @return the count for the whole subtree
+	 */
+	static int checkCounts(Node node, SubtreeCount count) {
+		if (node == Node.NULL_NODE) {
+			return 0;
+		}
+		return count.check(node, checkCounts(node.left, count), checkCounts(node.right, count));
+	}
+
+	/**
+	 * Checks that t holds expected and that its sizes, ranks, balance codes
+	 * and height are all right.
+	 */
+	static void assertValid(String expected, EditTree t) {
+		assertEquals(expected, t.toString());
+		assertEquals(expected.length(), t.size());
+		assertEquals(expected.length(), t.slowSize());
+		assertEquals(expected.length(), checkCounts(t.root, SIZES));
+		assertTrue(t.ranksMatchLeftSubtreeSize());
+		assertTrue(t.balanceCodesAreCorrect());
+		assertTrue(t.slowHeight() <= maxHeight(t.size()));
+	}
+
+	/**
+	 * Checks that actual has exactly the shape, rotation count and line
+	 * count of expected, as a tree saved and loaded again should.
+	 */
+	static void assertSameTree(EditTree expected, EditTree actual) {
+		assertEquals(expected.toDebugString(), actual.toDebugString());
+		assertEquals(expected.totalRotationCount(), actual.totalRotationCount());
+		assertEquals(expected.lineCount(), actual.lineCount());
+		assertTrue(actual.ranksMatchLeftSubtreeSize());
+	}
+
+	/**
+	 * @return a copy of t with the same shape and rotation count
+	 */
+	static EditTree copyOf(EditTree t) {
+		EditTree copy = new EditTree(t);
+		copy.setRotationCount(t.totalRotationCount());
+		return copy;
+	}
+
+	/**
+	 * @return files with the given names in a new temporary directory, all
+	 *         deleted on exit along with the .tmp files saving them leaves
+	 */
+	static File[] tempFiles(String... names) throws IOException {
+		File dir = Files.createTempDirectory("editortrees").toFile();
+		dir.deleteOnExit();
+		File[] files = new File[names.length];
+		for (int i = 0; i < names.length; i++) {
+			files[i] = new File(dir, names[i]);
+			files[i].deleteOnExit();
+			new File(dir, names[i] + ".tmp").deleteOnExit();
+		}
+		return files;
+	}
+
+	/**
+	 * @return a tree of size random letters, built by adding them one at a
+	 *         time at random positions
+	 */
+	static EditTree randomTree(Random random, int size) {
+		EditTree t = new EditTree();
+		for (int i = 0; i < size; i++) {
+			t.add((char) ('a' + random.nextInt(26)), random.nextInt(t.size() + 1));
+		}
+		return t;
+	}
+
+	/**
+	 * @return an edit someone might make to a text of size characters: a
+	 *         typed letter, a pasted line break and text, or a deleted
+	 *         character or range
+	 */
+	static Edit randomEdit(Random random, int size) {
+		int choice = random.nextInt(10);
+		if (choice < 5 || size == 0) {
+			return Edit.insert(random.nextInt(size + 1), String.valueOf((char) ('a' + random.nextInt(26))));
+		} else if (choice < 7) {
+			return Edit.delete(random.nextInt(size), 1);
+		} else if (choice < 8) {
+			return Edit.insert(random.nextInt(size + 1), "inserted\ntext");
+		} else {
+			int pos = random.nextInt(size);
+			return Edit.delete(pos, Math.min(size - pos, random.nextInt(20)));
+		}
+	}
+
+	/**
+	 * Makes edit to t, through add(char, int) and delete(int) when it is one
+	 * character long.
+	 */
+	static void apply(EditTree t, Edit edit) {
+		if (edit.insert) {
+			if (edit.length == 1) {
+				t.add(edit.text.charAt(0), edit.pos);
+			} else {
+				t.add(edit.text, edit.pos);
+			}
+		} else if (edit.length == 1) {
+			t.delete(edit.pos);
+		} else {
+			t.delete(edit.pos, edit.length);
+		}
+	}
+
+	/**
+	 * @return length random lowercase letters
+	 */
+	static String randomString(Random random, int length) {
+		return randomString(random, length, "abcdefghijklmnopqrstuvwxyz");
+	}
+
+	/**
+	 * @return length characters picked at random from alphabet, where a
+	 *         surrogate pair counts as one character
+	 */
+	static String randomString(Random random, int length, String alphabet) {
+		int[] codePoints = alphabet.codePoints().toArray();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.appendCodePoint(codePoints[random.nextInt(codePoints.length)]);
+		}
+		return sb.toString();
+	}
+}